@@ -13,54 +13,96 @@
  */
 package de.tschumacher.queueservice;
 
+import de.tschumacher.queueservice.sqs.ReceiveBackoff;
 import de.tschumacher.queueservice.sqs.SQSQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public abstract class AbstractMessageReceiverService<F> {
     private static final Logger logger = LoggerFactory.getLogger(AbstractMessageReceiverService.class);
     private static final int WORKER_COUNT = 5;
+    private static final long DEFAULT_SHUTDOWN_TIMEOUT_SECONDS = 30;
+    private static final long INACTIVE_POLLER_SLEEP_MILLIS = 1000;
 
     private final ExecutorService executorService;
-    private boolean running = false;
-    private final Runnable worker;
+    private volatile boolean running = false;
+    private final SQSQueue queue;
     private final MessageReceiver<F> messageReceiver;
 
     public AbstractMessageReceiverService(final SQSQueue queue, MessageReceiver<F> messageReceiver) {
+        this.queue = queue;
         this.messageReceiver = messageReceiver;
-        this.worker = newWorker(queue);
         this.executorService = Executors.newFixedThreadPool(WORKER_COUNT);
     }
 
     public void start() {
         this.running = true;
         for (int i = 0; i < WORKER_COUNT; i++) {
-            this.executorService.submit(this.worker);
+            this.executorService.submit(newWorker(i));
         }
     }
 
     public void stop() {
+        stop(DEFAULT_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops polling and waits for in-flight handlers to finish. Messages that were received but not yet handled are
+     * made visible again right away. Returns false if the workers had to be interrupted after the timeout.
+     */
+    public boolean stop(long timeout, TimeUnit unit) {
         this.running = false;
         this.executorService.shutdown();
+        try {
+            if (this.executorService.awaitTermination(timeout, unit)) {
+                return true;
+            }
+            logger.warn("Receiver workers did not finish within {} {}, interrupting", timeout, unit);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.executorService.shutdownNow();
+        return false;
     }
 
-    private Runnable newWorker(final SQSQueue queue) {
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    private Runnable newWorker(final int index) {
         return () -> {
+            ReceiveBackoff backoff = this.queue.getReceiveBackoff();
             while (AbstractMessageReceiverService.this.running) {
                 try {
-                    AbstractMessageReceiverService.this.messageReceiver.receiveMessages(queue);
+                    long cooldown = backoff.getCooldownMillis();
+                    if (cooldown > 0) {
+                        Thread.sleep(cooldown);
+                        continue;
+                    }
+                    if (index >= this.queue.getActivePollers(WORKER_COUNT)) {
+                        Thread.sleep(INACTIVE_POLLER_SLEEP_MILLIS);
+                        continue;
+                    }
+                    if (!this.messageReceiver.receiveMessages(this.queue, this::isRunning)) {
+                        Thread.sleep(INACTIVE_POLLER_SLEEP_MILLIS);
+                    }
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
                 } catch (final Throwable e) {
-                    logger.error("Receiving message failed", e);
+                    long delay = backoff.onError(e);
+                    logger.error("Receiving message failed, retrying in {} ms", delay, e);
+                    try {
+                        Thread.sleep(delay);
+                    } catch (final InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
                 }
             }
         };
     }
-
-    @Override
-    protected void finalize() throws Throwable {
-        stop();
-        super.finalize();
-    }
 }
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice;
+
+import com.amazonaws.services.sqs.model.Message;
+import de.tschumacher.queueservice.message.MessageHandler;
+import de.tschumacher.queueservice.message.SQSMessageFactory;
+import de.tschumacher.queueservice.sqs.MessageGroups;
+import de.tschumacher.queueservice.sqs.SQSQueue;
+import de.tschumacher.queueservice.timer.HashedWheelTimer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a fixed number of receiveMessageAsync calls in flight and hands the results to a handler pool from the
+ * completion callback, so no thread of this service waits in a long poll. The blocking HTTP call itself runs on the
+ * SDK's async executor, which should be sized for the total number of polls in flight.
+ */
+public class AsyncMessageReceiverService<F> {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncMessageReceiverService.class);
+    private static final int DEFAULT_CONCURRENT_POLLS = 5;
+    private static final int DEFAULT_HANDLER_COUNT = 5;
+    private static final long DEFAULT_SHUTDOWN_TIMEOUT_SECONDS = 30;
+    private static final long INACTIVE_POLL_DELAY_MILLIS = 1000;
+
+    private final SQSQueue queue;
+    private final MessageReceiver<F> messageReceiver;
+    private final int concurrentPolls;
+    private final int handlerCapacity;
+    private final ExecutorService handlerExecutor;
+    private final HashedWheelTimer timer = HashedWheelTimer.shared();
+    private final AtomicInteger inFlightPolls = new AtomicInteger();
+    private final AtomicInteger pendingMessages = new AtomicInteger();
+    private final AtomicInteger parkedPolls = new AtomicInteger();
+    private final Queue<String> unprocessed = new ConcurrentLinkedQueue<>();
+    private final Object pollsDone = new Object();
+    private volatile boolean running = false;
+
+    public AsyncMessageReceiverService(SQSQueue queue, MessageHandler<F> handler, SQSMessageFactory<F> factory) {
+        this(queue, new MessageReceiver<>(handler, factory), DEFAULT_CONCURRENT_POLLS, DEFAULT_HANDLER_COUNT);
+    }
+
+    public AsyncMessageReceiverService(
+        SQSQueue queue,
+        MessageReceiver<F> messageReceiver,
+        int concurrentPolls,
+        int handlerCount
+    ) {
+        if (messageReceiver.isCoalescing()) {
+            throw new IllegalArgumentException("coalescing receivers are not supported by the async service");
+        }
+        this.queue = queue;
+        this.messageReceiver = messageReceiver;
+        this.concurrentPolls = concurrentPolls;
+        this.handlerCapacity = handlerCount * 2;
+        this.handlerExecutor = Executors.newFixedThreadPool(handlerCount);
+    }
+
+    public void start() {
+        this.running = true;
+        for (int i = 0; i < this.concurrentPolls; i++) {
+            poll();
+        }
+    }
+
+    public void stop() {
+        stop(DEFAULT_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public boolean stop(long timeout, TimeUnit unit) {
+        this.running = false;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean drained = false;
+        try {
+            synchronized (this.pollsDone) {
+                long remaining;
+                while (this.inFlightPolls.get() > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this.pollsDone, remaining);
+                }
+            }
+            this.handlerExecutor.shutdown();
+            drained =
+                this.inFlightPolls.get() == 0 &&
+                this.handlerExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!drained) {
+            logger.warn("Receiver did not finish within {} {}, interrupting", timeout, unit);
+            for (Runnable task : this.handlerExecutor.shutdownNow()) {
+                ((GroupTask<?>) task).abandon();
+            }
+        }
+        releaseUnprocessed();
+        return drained;
+    }
+
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    private void poll() {
+        if (!this.running) {
+            return;
+        }
+        long cooldown = this.queue.getReceiveBackoff().getCooldownMillis();
+        if (cooldown > 0) {
+            schedulePoll(cooldown);
+            return;
+        }
+        if (this.inFlightPolls.get() >= this.queue.getActivePollers(this.concurrentPolls)) {
+            schedulePoll(INACTIVE_POLL_DELAY_MILLIS);
+            return;
+        }
+        if (!this.messageReceiver.tryStartPoll()) {
+            schedulePoll(INACTIVE_POLL_DELAY_MILLIS);
+            return;
+        }
+        this.inFlightPolls.incrementAndGet();
+        try {
+            this.queue.receiveMessagesAsync().whenComplete(this::pollCompleted);
+        } catch (final Throwable e) {
+            pollCompleted(null, e);
+        }
+    }
+
+    private void pollCompleted(List<Message> messages, Throwable error) {
+        if (error == null && !messages.isEmpty()) {
+            dispatch(messages);
+        } else {
+            this.messageReceiver.pollCompleted();
+        }
+
+        if (this.inFlightPolls.decrementAndGet() == 0) {
+            synchronized (this.pollsDone) {
+                this.pollsDone.notifyAll();
+            }
+        }
+
+        if (error != null) {
+            long delay = this.queue.getReceiveBackoff().onError(error);
+            logger.error("Receiving message failed, retrying in {} ms", delay, error);
+            schedulePoll(delay);
+        } else if (this.pendingMessages.get() < this.handlerCapacity) {
+            poll();
+        } else {
+            this.parkedPolls.incrementAndGet();
+            resumeParkedPoll();
+        }
+    }
+
+    private void schedulePoll(long delayMillis) {
+        if (this.running) {
+            this.timer.newTimeout(this::poll, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Hands every message group to the handler executor as one task, keeping a MessageGroupId in order. */
+    private void dispatch(List<Message> messages) {
+        AtomicInteger remaining = new AtomicInteger(messages.size());
+        for (List<Message> group : MessageGroups.split(messages)) {
+            this.pendingMessages.addAndGet(group.size());
+            try {
+                this.handlerExecutor.execute(new GroupTask<>(this, group, remaining));
+            } catch (final RejectedExecutionException e) {
+                markUnprocessed(group, remaining);
+            }
+        }
+    }
+
+    private void handle(List<Message> group, AtomicInteger remaining) {
+        try {
+            for (Message message : group) {
+                try {
+                    if (this.running) {
+                        this.messageReceiver.handleMessage(this.queue, message);
+                    } else {
+                        this.unprocessed.add(message.getReceiptHandle());
+                    }
+                } finally {
+                    this.pendingMessages.decrementAndGet();
+                    handled(remaining);
+                }
+            }
+        } finally {
+            resumeParkedPoll();
+        }
+    }
+
+    private void markUnprocessed(List<Message> group, AtomicInteger remaining) {
+        this.pendingMessages.addAndGet(-group.size());
+        for (Message message : group) {
+            this.unprocessed.add(message.getReceiptHandle());
+            handled(remaining);
+        }
+    }
+
+    /** Completes the poll towards the receiver once the last of its messages was handled. */
+    private void handled(AtomicInteger remaining) {
+        if (remaining.decrementAndGet() == 0) {
+            this.messageReceiver.pollCompleted();
+        }
+    }
+
+    private void resumeParkedPoll() {
+        int parked;
+        while (this.pendingMessages.get() < this.handlerCapacity && (parked = this.parkedPolls.get()) > 0) {
+            if (this.parkedPolls.compareAndSet(parked, parked - 1)) {
+                poll();
+                return;
+            }
+        }
+    }
+
+    private void releaseUnprocessed() {
+        List<String> receiptHandles = new ArrayList<>();
+        String receiptHandle;
+        while ((receiptHandle = this.unprocessed.poll()) != null) {
+            receiptHandles.add(receiptHandle);
+        }
+        if (!receiptHandles.isEmpty()) {
+            try {
+                this.queue.releaseMessages(receiptHandles);
+            } catch (final Throwable e) {
+                logger.error("Releasing unprocessed messages failed", e);
+            }
+        }
+    }
+
+    /** Handler task for one message group, kept as a class so tasks dropped on shutdown can be released. */
+    private static final class GroupTask<F> implements Runnable {
+        private final AsyncMessageReceiverService<F> service;
+        private final List<Message> group;
+        private final AtomicInteger remaining;
+
+        GroupTask(AsyncMessageReceiverService<F> service, List<Message> group, AtomicInteger remaining) {
+            this.service = service;
+            this.group = group;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public void run() {
+            service.handle(group, remaining);
+        }
+
+        void abandon() {
+            service.markUnprocessed(group, remaining);
+        }
+    }
+}
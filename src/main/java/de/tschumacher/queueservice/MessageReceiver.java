@@ -14,37 +14,237 @@
 package de.tschumacher.queueservice;
 
 import com.amazonaws.services.sqs.model.Message;
+import de.tschumacher.queueservice.circuitbreaker.CircuitBreaker;
+import de.tschumacher.queueservice.coalescing.CoalescedMessage;
+import de.tschumacher.queueservice.coalescing.MessageCoalescer;
+import de.tschumacher.queueservice.deadletter.PoisonMessagePolicy;
 import de.tschumacher.queueservice.message.MessageHandler;
 import de.tschumacher.queueservice.message.SQSMessage;
 import de.tschumacher.queueservice.message.SQSMessageFactory;
+import de.tschumacher.queueservice.metrics.LatencyHistogram;
+import de.tschumacher.queueservice.routing.MessageRoute;
+import de.tschumacher.queueservice.routing.MessageRouter;
 import de.tschumacher.queueservice.sqs.SQSQueue;
+import java.util.ArrayList;
 import java.util.List;
-import lombok.AllArgsConstructor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import lombok.Builder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-@AllArgsConstructor
 public class MessageReceiver<F> {
     private static final Logger logger = LoggerFactory.getLogger(MessageReceiver.class);
 
     private final MessageHandler<F> handler;
     private final SQSMessageFactory<F> factory;
+    private final PoisonMessagePolicy poisonMessagePolicy;
+    private final CircuitBreaker circuitBreaker;
+    private final MessageRouter<F> router;
+    private final MessageCoalescer<F> coalescer;
+    private final LatencyHistogram handlerTime = new LatencyHistogram();
 
-    public void receiveMessages(final SQSQueue queue) {
-        final List<Message> receiveMessages = queue.receiveMessages();
-        for (Message receiveMessage : receiveMessages) {
-            handleMessage(queue, receiveMessage);
+    public MessageReceiver(final MessageHandler<F> handler, final SQSMessageFactory<F> factory) {
+        this(handler, factory, null, null, null, null);
+    }
+
+    @Builder
+    public MessageReceiver(
+        final MessageHandler<F> handler,
+        final SQSMessageFactory<F> factory,
+        final PoisonMessagePolicy poisonMessagePolicy,
+        final CircuitBreaker circuitBreaker,
+        final MessageRouter<F> router,
+        final MessageCoalescer<F> coalescer
+    ) {
+        this.handler = handler;
+        this.factory = factory;
+        this.poisonMessagePolicy = poisonMessagePolicy;
+        this.circuitBreaker = circuitBreaker;
+        this.router = router;
+        this.coalescer = coalescer;
+    }
+
+    public boolean receiveMessages(final SQSQueue queue) {
+        return receiveMessages(queue, () -> true);
+    }
+
+    /** Receives and handles one batch. Returns false without receiving while the circuit breaker holds polls back. */
+    public boolean receiveMessages(final SQSQueue queue, final BooleanSupplier running) {
+        if (!tryStartPoll()) {
+            return false;
+        }
+        try {
+            if (coalescer != null) {
+                receiveCoalesced(queue, running);
+                return true;
+            }
+            final List<Message> receiveMessages = queue.receiveMessages();
+            for (int i = 0; i < receiveMessages.size(); i++) {
+                if (!running.getAsBoolean()) {
+                    releaseMessages(queue, receiveMessages.subList(i, receiveMessages.size()));
+                    break;
+                }
+                handleMessage(queue, receiveMessages.get(i));
+            }
+            return true;
+        } finally {
+            pollCompleted();
+        }
+    }
+
+    /**
+     * Keeps receiving until the coalescing window has passed, then handles one message per key. The messages they
+     * supersede are deleted in one batch once the handler succeeded. If it failed, they are deleted all the same since
+     * the retried message supersedes them, unless their content was merged into it. Then they are retried with it.
+     */
+    private void receiveCoalesced(final SQSQueue queue, final BooleanSupplier running) {
+        final List<Message> messages = new ArrayList<>(queue.receiveMessages());
+        long deadline = System.nanoTime() + coalescer.getWindowNanos();
+        long windowLeft;
+        while (
+            !messages.isEmpty() &&
+            messages.size() < coalescer.getMaxMessages() &&
+            (windowLeft = deadline - System.nanoTime()) > 0 &&
+            running.getAsBoolean()
+        ) {
+            // Rounds down, a sub-second remainder short polls instead of overrunning the window.
+            List<Message> more = queue.receiveMessages((int) TimeUnit.NANOSECONDS.toSeconds(windowLeft));
+            if (more.isEmpty()) {
+                break;
+            }
+            messages.addAll(more);
+        }
+
+        List<CoalescedMessage<F>> coalesced = coalescer.coalesce(messages, factory);
+        List<String> superseded = new ArrayList<>();
+        List<String> retried = new ArrayList<>();
+        for (int i = 0; i < coalesced.size(); i++) {
+            if (!running.getAsBoolean()) {
+                List<Message> remaining = new ArrayList<>();
+                for (CoalescedMessage<F> message : coalesced.subList(i, coalesced.size())) {
+                    remaining.add(message.getMessage());
+                    remaining.addAll(message.getSuperseded());
+                }
+                releaseMessages(queue, remaining);
+                break;
+            }
+            CoalescedMessage<F> message = coalesced.get(i);
+            boolean consumed = handleMessage(queue, message.getMessage(), message.getSqsMessage());
+            List<String> target = consumed || !coalescer.isMerging() ? superseded : retried;
+            for (Message supersededMessage : message.getSuperseded()) {
+                target.add(supersededMessage.getReceiptHandle());
+            }
+        }
+        if (!superseded.isEmpty()) {
+            queue.deleteMessages(superseded);
+        }
+        if (!retried.isEmpty()) {
+            queue.retryMessages(retried);
+        }
+    }
+
+    /**
+     * Coalescing needs the whole batch, so it only works through {@link #receiveMessages}. Services that dispatch
+     * single messages to {@link #handleMessage} reject coalescing receivers.
+     */
+    public boolean isCoalescing() {
+        return coalescer != null;
+    }
+
+    /**
+     * For services that poll on their own: returns whether a poll may be issued now. Every granted poll has to be
+     * followed by {@link #pollCompleted()} once its messages were handled.
+     */
+    public boolean tryStartPoll() {
+        return circuitBreaker == null || circuitBreaker.tryAcquirePermission();
+    }
+
+    public void pollCompleted() {
+        if (circuitBreaker != null) {
+            circuitBreaker.releasePermission();
+        }
+    }
+
+    private void releaseMessages(SQSQueue queue, List<Message> messages) {
+        final List<String> receiptHandles = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            receiptHandles.add(message.getReceiptHandle());
         }
+        queue.releaseMessages(receiptHandles);
+    }
+
+    /** Duration of successful handler calls in microseconds. */
+    public LatencyHistogram getHandlerTime() {
+        return handlerTime;
     }
 
-    private void handleMessage(SQSQueue queue, Message receiveMessage) {
+    public void handleMessage(SQSQueue queue, Message receiveMessage) {
+        handleMessage(queue, receiveMessage, null);
+    }
+
+    /** Returns whether the message was consumed, false if it will be redelivered. */
+    private boolean handleMessage(SQSQueue queue, Message receiveMessage, SQSMessage<F> decoded) {
+        if (poisonMessagePolicy != null && poisonMessagePolicy.exceedsReceiveCount(receiveMessage)) {
+            poisonMessagePolicy.forward(queue, receiveMessage, null);
+            return true;
+        }
+
+        MessageHandler<F> target = this.handler;
+        if (router != null) {
+            MessageRoute<F> route = router.route(receiveMessage);
+            if (route != null && route.isDrop()) {
+                queue.deleteMessage(receiveMessage.getReceiptHandle());
+                return true;
+            }
+            if (route != null) {
+                target = route.getHandler();
+            }
+        }
+
+        SQSMessage<F> message;
         try {
-            SQSMessage<F> message = this.factory.createSQSMessage(receiveMessage);
-            this.handler.receivedMessage(queue, message);
-            queue.deleteMessage(message.getReceiptHandle());
+            message = decoded != null ? decoded : this.factory.createSQSMessage(receiveMessage);
+        } catch (final Throwable e) {
+            // A malformed message says nothing about the handler's health, so the breaker does not see it.
+            logger.error("Decoding message failed for ID {}: {}", receiveMessage.getMessageId(), e.getMessage(), e);
+            return failed(queue, receiveMessage, e, false);
+        }
+
+        try {
+            long start = System.nanoTime();
+            target.receivedMessage(queue, message);
+            handlerTime.recordSince(start);
         } catch (final Throwable e) {
             logger.error("Handling message failed for ID {}: {}", receiveMessage.getMessageId(), e.getMessage(), e);
-            queue.retryMessage(receiveMessage.getReceiptHandle());
+            return failed(queue, receiveMessage, e, true);
+        }
+        if (circuitBreaker != null) {
+            circuitBreaker.onSuccess();
+        }
+
+        try {
+            queue.deleteMessage(message.getReceiptHandle());
+        } catch (final Throwable e) {
+            logger.error(
+                "Deleting handled message failed for ID {}: {}",
+                receiveMessage.getMessageId(),
+                e.getMessage(),
+                e
+            );
+        }
+        return true;
+    }
+
+    private boolean failed(SQSQueue queue, Message receiveMessage, Throwable e, boolean handlerFailure) {
+        if (poisonMessagePolicy != null && poisonMessagePolicy.isPoison(e)) {
+            poisonMessagePolicy.forward(queue, receiveMessage, e);
+            return true;
+        }
+        if (handlerFailure && circuitBreaker != null) {
+            circuitBreaker.onFailure();
         }
+        queue.retryMessage(receiveMessage.getReceiptHandle());
+        return false;
     }
 }
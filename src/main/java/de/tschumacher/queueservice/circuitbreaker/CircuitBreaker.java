@@ -0,0 +1,162 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.circuitbreaker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import lombok.Builder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops polling while handlers fail en masse. The breaker trips once the failure rate over the last
+ * {@code windowSize} handled messages reaches {@code failureRateThreshold}, and then rejects polls for
+ * {@code openMillis}. Afterwards it lets at most {@code halfOpenConcurrency} probe polls run at a time and closes again
+ * after {@code halfOpenSuccesses} successfully handled messages; a single failure while probing opens it again.
+ */
+public class CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final int halfOpenConcurrency;
+    private final int halfOpenSuccesses;
+    private final LongSupplier clock;
+
+    private final boolean[] outcomes;
+    private int outcomeIndex;
+    private int calls;
+    private int failures;
+
+    private CircuitState state = CircuitState.CLOSED;
+    private long openUntil;
+    private int activeProbes;
+    private int probeSuccesses;
+
+    @Builder
+    public CircuitBreaker(
+        double failureRateThreshold,
+        int windowSize,
+        int minimumCalls,
+        long openMillis,
+        int halfOpenConcurrency,
+        int halfOpenSuccesses
+    ) {
+        this(
+            failureRateThreshold,
+            windowSize,
+            minimumCalls,
+            openMillis,
+            halfOpenConcurrency,
+            halfOpenSuccesses,
+            System::nanoTime
+        );
+    }
+
+    CircuitBreaker(
+        double failureRateThreshold,
+        int windowSize,
+        int minimumCalls,
+        long openMillis,
+        int halfOpenConcurrency,
+        int halfOpenSuccesses,
+        LongSupplier clock
+    ) {
+        this.failureRateThreshold = failureRateThreshold > 0 ? failureRateThreshold : 0.5;
+        this.outcomes = new boolean[windowSize > 0 ? windowSize : 50];
+        this.minimumCalls = Math.min(minimumCalls > 0 ? minimumCalls : 20, this.outcomes.length);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis > 0 ? openMillis : 30_000);
+        this.halfOpenConcurrency = halfOpenConcurrency > 0 ? halfOpenConcurrency : 1;
+        this.halfOpenSuccesses = halfOpenSuccesses > 0 ? halfOpenSuccesses : 3;
+        this.clock = clock;
+    }
+
+    /** Returns whether a poll may run. Every granted poll has to be followed by {@link #releasePermission()}. */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == CircuitState.OPEN) {
+            if (clock.getAsLong() - openUntil < 0) {
+                return false;
+            }
+            transition(CircuitState.HALF_OPEN);
+        }
+        if (state == CircuitState.HALF_OPEN) {
+            if (activeProbes >= halfOpenConcurrency) {
+                return false;
+            }
+            activeProbes++;
+        }
+        return true;
+    }
+
+    public synchronized void releasePermission() {
+        if (state == CircuitState.HALF_OPEN && activeProbes > 0) {
+            activeProbes--;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state == CircuitState.HALF_OPEN) {
+            if (++probeSuccesses >= halfOpenSuccesses) {
+                transition(CircuitState.CLOSED);
+            }
+        } else if (state == CircuitState.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == CircuitState.HALF_OPEN) {
+            transition(CircuitState.OPEN);
+        } else if (state == CircuitState.CLOSED) {
+            record(true);
+            if (calls >= minimumCalls && failures >= failureRateThreshold * calls) {
+                transition(CircuitState.OPEN);
+            }
+        }
+    }
+
+    public synchronized CircuitState getState() {
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (calls == outcomes.length) {
+            if (outcomes[outcomeIndex]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        outcomes[outcomeIndex] = failure;
+        if (failure) {
+            failures++;
+        }
+        outcomeIndex = (outcomeIndex + 1) % outcomes.length;
+    }
+
+    private void transition(CircuitState next) {
+        logger.warn("Circuit breaker changed from {} to {}", state, next);
+        state = next;
+        activeProbes = 0;
+        probeSuccesses = 0;
+        if (next == CircuitState.OPEN) {
+            openUntil = clock.getAsLong() + openNanos;
+        } else if (next == CircuitState.CLOSED) {
+            calls = 0;
+            failures = 0;
+            outcomeIndex = 0;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.client;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.sns.AmazonSNSAsync;
+import com.amazonaws.services.sns.AmazonSNSAsyncClientBuilder;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.AmazonSQSAsyncClientBuilder;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.ToString;
+import lombok.Value;
+
+/**
+ * Hands out one SQS and one SNS client per credentials, region and client settings, so queues and topics with the
+ * same account share a connection pool and async executor instead of each building their own.
+ */
+public class AwsClientFactory {
+    private static final AwsClientFactory SHARED = new AwsClientFactory();
+
+    private final ConcurrentMap<ClientKey, AmazonSQSAsync> sqsClients = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ClientKey, AmazonSNSAsync> snsClients = new ConcurrentHashMap<>();
+
+    public static AwsClientFactory shared() {
+        return SHARED;
+    }
+
+    public AmazonSQSAsync sqs(String accessKey, String secretKey, String region, AwsClientSettings settings) {
+        return sqsClients.computeIfAbsent(
+            ClientKey.of(accessKey, secretKey, region, settings),
+            key ->
+                AmazonSQSAsyncClientBuilder
+                    .standard()
+                    .withCredentials(credentials(key))
+                    .withRegion(Regions.fromName(key.getRegion()))
+                    .withClientConfiguration(clientConfiguration(key))
+                    .withExecutorFactory(() -> executor("sqs", key))
+                    .build()
+        );
+    }
+
+    public AmazonSNSAsync sns(String accessKey, String secretKey, String region, AwsClientSettings settings) {
+        return snsClients.computeIfAbsent(
+            ClientKey.of(accessKey, secretKey, region, settings),
+            key ->
+                AmazonSNSAsyncClientBuilder
+                    .standard()
+                    .withCredentials(credentials(key))
+                    .withRegion(Regions.fromName(key.getRegion()))
+                    .withClientConfiguration(clientConfiguration(key))
+                    .withExecutorFactory(() -> executor("sns", key))
+                    .build()
+        );
+    }
+
+    public void shutdown() {
+        sqsClients.values().forEach(AmazonSQSAsync::shutdown);
+        sqsClients.clear();
+        snsClients.values().forEach(AmazonSNSAsync::shutdown);
+        snsClients.clear();
+    }
+
+    private static AWSStaticCredentialsProvider credentials(ClientKey key) {
+        return new AWSStaticCredentialsProvider(new BasicAWSCredentials(key.getAccessKey(), key.getSecretKey()));
+    }
+
+    private static ClientConfiguration clientConfiguration(ClientKey key) {
+        return new ClientConfiguration()
+            .withMaxConnections(key.getMaxConnections())
+            .withTcpKeepAlive(key.isTcpKeepAlive())
+            .withConnectionTimeout(key.getConnectionTimeoutMillis())
+            .withSocketTimeout(key.getSocketTimeoutMillis());
+    }
+
+    private static ExecutorService executor(String name, ClientKey key) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(
+            key.getAsyncExecutorThreads(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "queueservice-" + name + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+    }
+
+    /**
+     * Copies the settings, which are mutable, so changing them afterwards can neither corrupt the map nor leak into
+     * a client that was already built.
+     */
+    @Value
+    private static class ClientKey {
+        String accessKey;
+
+        @ToString.Exclude
+        String secretKey;
+
+        String region;
+        int maxConnections;
+        int asyncExecutorThreads;
+        boolean tcpKeepAlive;
+        int connectionTimeoutMillis;
+        int socketTimeoutMillis;
+
+        static ClientKey of(String accessKey, String secretKey, String region, AwsClientSettings settings) {
+            return new ClientKey(
+                accessKey,
+                secretKey,
+                region,
+                settings.getMaxConnections(),
+                settings.getAsyncExecutorThreads(),
+                settings.isTcpKeepAlive(),
+                settings.getConnectionTimeoutMillis(),
+                settings.getSocketTimeoutMillis()
+            );
+        }
+    }
+}
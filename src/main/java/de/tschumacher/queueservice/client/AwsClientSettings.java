@@ -0,0 +1,36 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.client;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class AwsClientSettings {
+    @Builder.Default
+    private int maxConnections = 50;
+
+    @Builder.Default
+    private int asyncExecutorThreads = 50;
+
+    @Builder.Default
+    private boolean tcpKeepAlive = true;
+
+    @Builder.Default
+    private int connectionTimeoutMillis = 10 * 1000;
+
+    @Builder.Default
+    private int socketTimeoutMillis = 50 * 1000;
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.coalescing;
+
+import com.amazonaws.services.sqs.model.Message;
+import de.tschumacher.queueservice.message.SQSMessage;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/** Message that is handled for its key, together with the older messages it supersedes. */
+@Getter
+@AllArgsConstructor
+public class CoalescedMessage<F> {
+    private final Message message;
+
+    /** Already decoded message, or null if it still has to be decoded. */
+    private final SQSMessage<F> sqsMessage;
+
+    private final List<Message> superseded;
+}
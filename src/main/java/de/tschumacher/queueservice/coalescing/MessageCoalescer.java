@@ -0,0 +1,205 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.coalescing;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import de.tschumacher.queueservice.message.SQSMessage;
+import de.tschumacher.queueservice.message.SQSMessageFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Buffers received messages for a short window and groups them by key, so only the latest message per key, or the
+ * merge of all of them, reaches the handler. Messages without a key are handled on their own. Latest means the highest
+ * SentTimestamp, messages sent within the same millisecond keep their receive order.
+ */
+public class MessageCoalescer<F> {
+    private static final Logger logger = LoggerFactory.getLogger(MessageCoalescer.class);
+    private static final long DEFAULT_WINDOW_MILLIS = 100;
+    private static final int DEFAULT_MAX_MESSAGES = 100;
+    private static final Comparator<Message> SENT_ORDER = Comparator.comparingLong(MessageCoalescer::getSentTimestamp);
+
+    private final Function<Message, String> attributeKey;
+    private final Function<? super F, String> contentKey;
+    private final BinaryOperator<F> merge;
+    private final long windowNanos;
+    private final int maxMessages;
+
+    private MessageCoalescer(Builder<F> builder) {
+        this.attributeKey = builder.attributeKey;
+        this.contentKey = builder.contentKey;
+        this.merge = builder.merge;
+        this.windowNanos = builder.windowNanos;
+        this.maxMessages = builder.maxMessages;
+    }
+
+    /** Keys on a message attribute, messages are only decoded once they are handled. */
+    public static <F> Builder<F> byAttribute(String name) {
+        return new Builder<F>(
+            message -> {
+                MessageAttributeValue value = message.getMessageAttributes().get(name);
+                return value != null ? value.getStringValue() : null;
+            },
+            null
+        );
+    }
+
+    /** Keys on the decoded content, so every buffered message is decoded. */
+    public static <F> Builder<F> byContent(Function<? super F, String> key) {
+        return new Builder<>(null, key);
+    }
+
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    /** Merged messages carry the content of the ones they supersede, so those must not be dropped on failure. */
+    public boolean isMerging() {
+        return merge != null;
+    }
+
+    public List<CoalescedMessage<F>> coalesce(List<Message> messages, SQSMessageFactory<F> factory) {
+        List<CoalescedMessage<F>> coalesced = new ArrayList<>(messages.size());
+        Map<String, List<Message>> groups = new LinkedHashMap<>();
+        Map<Message, SQSMessage<F>> decoded = new IdentityHashMap<>();
+        for (Message message : messages) {
+            String key;
+            if (attributeKey != null) {
+                key = attributeKey.apply(message);
+            } else {
+                SQSMessage<F> sqsMessage = decode(factory, message);
+                if (sqsMessage == null) {
+                    coalesced.add(new CoalescedMessage<>(message, null, Collections.emptyList()));
+                    continue;
+                }
+                decoded.put(message, sqsMessage);
+                key = contentKey.apply(sqsMessage.getContent());
+            }
+
+            if (key == null) {
+                coalesced.add(new CoalescedMessage<>(message, decoded.get(message), Collections.emptyList()));
+            } else {
+                groups.computeIfAbsent(key, k -> new ArrayList<>(2)).add(message);
+            }
+        }
+
+        for (List<Message> group : groups.values()) {
+            if (group.size() > 1) {
+                group.sort(SENT_ORDER);
+            }
+            Message latest = group.get(group.size() - 1);
+            List<Message> superseded = group.subList(0, group.size() - 1);
+            coalesced.add(new CoalescedMessage<>(latest, merge(factory, group, decoded), superseded));
+        }
+        return coalesced;
+    }
+
+    private SQSMessage<F> merge(
+        SQSMessageFactory<F> factory,
+        List<Message> group,
+        Map<Message, SQSMessage<F>> decoded
+    ) {
+        Message latest = group.get(group.size() - 1);
+        if (merge == null || group.size() == 1) {
+            return decoded.get(latest);
+        }
+
+        F content = null;
+        SQSMessage<F> merged = null;
+        for (Message message : group) {
+            SQSMessage<F> sqsMessage = decoded.containsKey(message) ? decoded.get(message) : decode(factory, message);
+            if (sqsMessage == null) {
+                continue;
+            }
+            content = content == null ? sqsMessage.getContent() : merge.apply(content, sqsMessage.getContent());
+            if (message == latest) {
+                merged = sqsMessage;
+            }
+        }
+        if (merged != null) {
+            merged.setContent(content);
+        }
+        return merged;
+    }
+
+    private static <F> SQSMessage<F> decode(SQSMessageFactory<F> factory, Message message) {
+        try {
+            return factory.createSQSMessage(message);
+        } catch (final RuntimeException e) {
+            logger.warn("Decoding message {} for coalescing failed", message.getMessageId(), e);
+            return null;
+        }
+    }
+
+    private static long getSentTimestamp(Message message) {
+        String sentTimestamp = message.getAttributes().get("SentTimestamp");
+        return sentTimestamp != null ? Long.parseLong(sentTimestamp) : 0;
+    }
+
+    public static class Builder<F> {
+        private final Function<Message, String> attributeKey;
+        private final Function<? super F, String> contentKey;
+        private BinaryOperator<F> merge;
+        private long windowNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_WINDOW_MILLIS);
+        private int maxMessages = DEFAULT_MAX_MESSAGES;
+
+        private Builder(Function<Message, String> attributeKey, Function<? super F, String> contentKey) {
+            this.attributeKey = attributeKey;
+            this.contentKey = contentKey;
+        }
+
+        /**
+         * Merges older into newer content instead of keeping only the latest message. The handler gets the latest
+         * message with the merged content, its plain content is left as received.
+         */
+        public Builder<F> merge(BinaryOperator<F> merge) {
+            this.merge = merge;
+            return this;
+        }
+
+        /**
+         * How long to keep receiving before handling. Buffered messages stay invisible meanwhile. SQS waits in whole
+         * seconds, so within the last second of the window follow-up receives are short polls, and the first one
+         * that comes back empty ends the window early.
+         */
+        public Builder<F> window(long window, TimeUnit unit) {
+            this.windowNanos = unit.toNanos(window);
+            return this;
+        }
+
+        public Builder<F> maxMessages(int maxMessages) {
+            this.maxMessages = maxMessages;
+            return this;
+        }
+
+        public MessageCoalescer<F> build() {
+            return new MessageCoalescer<>(this);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.deadletter;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.google.gson.JsonObject;
+import de.tschumacher.queueservice.sqs.SQSQueue;
+import de.tschumacher.queueservice.timer.HashedWheelTimer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import lombok.Builder;
+import lombok.Singular;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client-side poison message handling. A message counts as poison once it was received more often than
+ * {@code maxReceiveCount}, or when its handler failed with one of the {@code poisonExceptions}. Poison messages are
+ * forwarded to the dead-letter queue in batches, together with their attributes and the failure, and deleted from
+ * their source queue once the dead-letter queue accepted them.
+ */
+public class PoisonMessagePolicy {
+    private static final Logger logger = LoggerFactory.getLogger(PoisonMessagePolicy.class);
+    private static final int BATCH_SIZE = 10;
+    private static final int MAX_MESSAGE_ATTRIBUTES = 10;
+    private static final int MAX_ERROR_LENGTH = 256;
+    private static final long DEFAULT_LINGER_MILLIS = 200;
+
+    /** Single JSON attribute with the failure, so the original message keeps nine of its ten attributes. */
+    static final String DEAD_LETTER = "DeadLetter";
+    static final String REASON = "reason";
+    static final String ERROR = "error";
+    static final String SOURCE_QUEUE = "sourceQueue";
+    static final String RECEIVE_COUNT = "receiveCount";
+    static final String SENT_TIMESTAMP = "sentTimestamp";
+    static final String MAX_RECEIVE_COUNT_EXCEEDED = "MaxReceiveCountExceeded";
+
+    private final SQSQueue deadLetterQueue;
+    private final int maxReceiveCount;
+    private final Set<Class<? extends Throwable>> poisonExceptions;
+    private final long lingerMillis;
+    private final Map<SQSQueue, List<PoisonMessage>> pending = new HashMap<>();
+
+    @Builder
+    public PoisonMessagePolicy(
+        SQSQueue deadLetterQueue,
+        int maxReceiveCount,
+        @Singular Set<Class<? extends Throwable>> poisonExceptions,
+        long lingerMillis
+    ) {
+        this.deadLetterQueue = deadLetterQueue;
+        this.maxReceiveCount = maxReceiveCount;
+        this.poisonExceptions = poisonExceptions;
+        this.lingerMillis = lingerMillis > 0 ? lingerMillis : DEFAULT_LINGER_MILLIS;
+    }
+
+    public boolean exceedsReceiveCount(Message message) {
+        return maxReceiveCount > 0 && getReceiveCount(message) > maxReceiveCount;
+    }
+
+    public boolean isPoison(Throwable e) {
+        for (Class<? extends Throwable> poisonException : poisonExceptions) {
+            if (poisonException.isInstance(e)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Queues the message for the next batch to the dead-letter queue. */
+    public void forward(SQSQueue source, Message message, Throwable e) {
+        boolean first;
+        List<PoisonMessage> batch = null;
+        synchronized (pending) {
+            List<PoisonMessage> messages = pending.computeIfAbsent(source, key -> new ArrayList<>());
+            first = messages.isEmpty();
+            messages.add(new PoisonMessage(message, e));
+            if (messages.size() >= BATCH_SIZE) {
+                batch = pending.remove(source);
+            }
+        }
+
+        if (batch != null) {
+            send(source, batch);
+        } else if (first) {
+            HashedWheelTimer.shared().newTimeout(() -> flush(source), lingerMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void flush() {
+        List<SQSQueue> sources;
+        synchronized (pending) {
+            sources = new ArrayList<>(pending.keySet());
+        }
+        for (SQSQueue source : sources) {
+            flush(source);
+        }
+    }
+
+    private void flush(SQSQueue source) {
+        List<PoisonMessage> batch;
+        synchronized (pending) {
+            batch = pending.remove(source);
+        }
+        if (batch != null) {
+            send(source, batch);
+        }
+    }
+
+    private void send(SQSQueue source, List<PoisonMessage> batch) {
+        try {
+            String sourceQueueUrl = source.getQueueUrl();
+            boolean fifo = deadLetterQueue.isFifo();
+            List<SendMessageBatchRequestEntry> entries = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                entries.add(createEntry(Integer.toString(i), sourceQueueUrl, fifo, batch.get(i)));
+            }
+
+            Set<String> failedIds = deadLetterQueue.sendMessageBatch(entries);
+
+            List<String> forwarded = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                if (!failedIds.contains(Integer.toString(i))) {
+                    forwarded.add(batch.get(i).message.getReceiptHandle());
+                }
+            }
+            if (!forwarded.isEmpty()) {
+                source.deleteMessages(forwarded);
+            }
+            logger.warn(
+                "Forwarded {} poison messages to dead-letter queue, {} failed",
+                forwarded.size(),
+                failedIds.size()
+            );
+        } catch (final Throwable e) {
+            logger.error("Forwarding poison messages failed, they will be redelivered", e);
+        }
+    }
+
+    private static SendMessageBatchRequestEntry createEntry(
+        String id,
+        String sourceQueueUrl,
+        boolean fifo,
+        PoisonMessage poisonMessage
+    ) {
+        Message message = poisonMessage.message;
+        Throwable e = poisonMessage.error;
+
+        JsonObject deadLetter = new JsonObject();
+        deadLetter.addProperty(REASON, e != null ? e.getClass().getName() : MAX_RECEIVE_COUNT_EXCEEDED);
+        if (e != null && e.getMessage() != null) {
+            deadLetter.addProperty(ERROR, truncate(e.getMessage()));
+        }
+        deadLetter.addProperty(SOURCE_QUEUE, sourceQueueUrl);
+        deadLetter.addProperty(RECEIVE_COUNT, getReceiveCount(message));
+        String sentTimestamp = message.getAttributes().get("SentTimestamp");
+        if (sentTimestamp != null) {
+            deadLetter.addProperty(SENT_TIMESTAMP, Long.parseLong(sentTimestamp));
+        }
+
+        Map<String, MessageAttributeValue> attributes = new LinkedHashMap<>();
+        attributes.put(
+            DEAD_LETTER,
+            new MessageAttributeValue().withDataType("String").withStringValue(deadLetter.toString())
+        );
+        for (Map.Entry<String, MessageAttributeValue> attribute : message.getMessageAttributes().entrySet()) {
+            if (attributes.size() >= MAX_MESSAGE_ATTRIBUTES) {
+                logger.warn(
+                    "Dropping attribute {} of dead-lettered message {}",
+                    attribute.getKey(),
+                    message.getMessageId()
+                );
+                continue;
+            }
+            attributes.putIfAbsent(attribute.getKey(), attribute.getValue());
+        }
+
+        SendMessageBatchRequestEntry entry = new SendMessageBatchRequestEntry()
+            .withId(id)
+            .withMessageBody(message.getBody())
+            .withMessageAttributes(attributes);
+        if (fifo) {
+            String messageGroupId = message.getAttributes().get("MessageGroupId");
+            entry
+                .withMessageGroupId(messageGroupId != null ? messageGroupId : "dead-letter")
+                .withMessageDeduplicationId(message.getMessageId());
+        }
+        return entry;
+    }
+
+    private static int getReceiveCount(Message message) {
+        String receiveCount = message.getAttributes().get("ApproximateReceiveCount");
+        return receiveCount != null ? Integer.parseInt(receiveCount) : 0;
+    }
+
+    private static String truncate(String value) {
+        return value.length() > MAX_ERROR_LENGTH ? value.substring(0, MAX_ERROR_LENGTH) : value;
+    }
+
+    private static class PoisonMessage {
+        private final Message message;
+        private final Throwable error;
+
+        PoisonMessage(Message message, Throwable error) {
+            this.message = message;
+            this.error = error;
+        }
+    }
+}
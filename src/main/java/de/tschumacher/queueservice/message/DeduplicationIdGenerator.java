@@ -0,0 +1,47 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.message;
+
+import java.util.function.Function;
+
+/**
+ * Computes the {@code MessageDeduplicationId} of an outgoing message for FIFO queues and topics. Generators run on the
+ * producer thread for every message, so they should be cheap.
+ */
+@FunctionalInterface
+public interface DeduplicationIdGenerator<T> {
+    String generate(SQSMessage<T> message);
+
+    /** Sets the id the generator computes for the message, a null generator leaves the message untouched. */
+    static <T> void apply(DeduplicationIdGenerator<T> generator, SQSMessage<T> message) {
+        if (generator != null) {
+            message.setMessageDeduplicationId(generator.generate(message));
+        }
+    }
+
+    /** Deduplicates messages with the same encoded body, like content based deduplication does. */
+    static <T> DeduplicationIdGenerator<T> contentHash() {
+        return message -> FastHash.hash(message.getPlainContent());
+    }
+
+    /** Deduplicates messages with the same business key, regardless of the rest of their content. */
+    static <T> DeduplicationIdGenerator<T> businessKey(final Function<? super T, ? extends CharSequence> key) {
+        return message -> FastHash.hash(key.apply(message.getContent()));
+    }
+
+    /** Uses an id the content already carries, it has to be at most 128 characters long. */
+    static <T> DeduplicationIdGenerator<T> supplied(final Function<? super T, String> id) {
+        return message -> id.apply(message.getContent());
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.message;
+
+/** 128 bit non-cryptographic hash, two multiplicative lanes with a final avalanche, formatted as 32 hex digits. */
+final class FastHash {
+
+    private FastHash() {}
+
+    static String hash(final CharSequence value) {
+        long h1 = 0xcbf29ce484222325L;
+        long h2 = 0x84222325cbf29ce4L;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            h1 = (h1 ^ c) * 0x100000001b3L;
+            h2 = (h2 ^ c) * 0x9e3779b97f4a7c15L;
+        }
+        h1 = mix(h1 ^ length);
+        h2 = mix(h2 ^ h1);
+
+        char[] digits = new char[32];
+        for (int i = 15; i >= 0; i--) {
+            digits[i] = Character.forDigit((int) (h1 & 0xf), 16);
+            digits[i + 16] = Character.forDigit((int) (h2 & 0xf), 16);
+            h1 >>>= 4;
+            h2 >>>= 4;
+        }
+        return new String(digits);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.message;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+/**
+ * Typed message attribute. Attributes travel next to the body, so consumers can route and filter on them without
+ * decoding the message. The data type may carry a custom suffix, e.g. {@code Number.int} or {@code String.json}.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class MessageAttribute {
+    public static final String STRING = "String";
+    public static final String NUMBER = "Number";
+    public static final String BINARY = "Binary";
+
+    String dataType;
+    String stringValue;
+    ByteBuffer binaryValue;
+
+    public static MessageAttribute string(String value) {
+        return new MessageAttribute(STRING, value, null);
+    }
+
+    public static MessageAttribute number(Number value) {
+        String number = value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString();
+        return new MessageAttribute(NUMBER, number, null);
+    }
+
+    public static MessageAttribute binary(byte[] value) {
+        return new MessageAttribute(BINARY, null, ByteBuffer.wrap(value));
+    }
+
+    public static MessageAttribute of(String dataType, String value) {
+        return new MessageAttribute(dataType, value, null);
+    }
+
+    public boolean isNumber() {
+        return dataType.startsWith(NUMBER);
+    }
+
+    public boolean isBinary() {
+        return dataType.startsWith(BINARY);
+    }
+
+    public long longValue() {
+        return Long.parseLong(stringValue);
+    }
+
+    public BigDecimal decimalValue() {
+        return new BigDecimal(stringValue);
+    }
+
+    public MessageAttributeValue toSQSAttribute() {
+        return new MessageAttributeValue()
+            .withDataType(dataType)
+            .withStringValue(stringValue)
+            .withBinaryValue(binaryValue);
+    }
+
+    public com.amazonaws.services.sns.model.MessageAttributeValue toSNSAttribute() {
+        return new com.amazonaws.services.sns.model.MessageAttributeValue()
+            .withDataType(dataType)
+            .withStringValue(stringValue)
+            .withBinaryValue(binaryValue);
+    }
+
+    public static MessageAttribute fromSQSAttribute(MessageAttributeValue value) {
+        return new MessageAttribute(value.getDataType(), value.getStringValue(), value.getBinaryValue());
+    }
+
+    public static Map<String, MessageAttributeValue> toSQSAttributes(Map<String, MessageAttribute> attributes) {
+        Map<String, MessageAttributeValue> values = new LinkedHashMap<>(attributes.size() * 2);
+        for (Map.Entry<String, MessageAttribute> attribute : attributes.entrySet()) {
+            values.put(attribute.getKey(), attribute.getValue().toSQSAttribute());
+        }
+        return values;
+    }
+
+    public static Map<String, com.amazonaws.services.sns.model.MessageAttributeValue> toSNSAttributes(
+        Map<String, MessageAttribute> attributes
+    ) {
+        Map<String, com.amazonaws.services.sns.model.MessageAttributeValue> values = new LinkedHashMap<>(
+            attributes.size() * 2
+        );
+        for (Map.Entry<String, MessageAttribute> attribute : attributes.entrySet()) {
+            values.put(attribute.getKey(), attribute.getValue().toSNSAttribute());
+        }
+        return values;
+    }
+
+    public static Map<String, MessageAttribute> fromSQSAttributes(Map<String, MessageAttributeValue> values) {
+        if (values.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, MessageAttribute> attributes = new LinkedHashMap<>(values.size() * 2);
+        for (Map.Entry<String, MessageAttributeValue> value : values.entrySet()) {
+            attributes.put(value.getKey(), fromSQSAttribute(value.getValue()));
+        }
+        return attributes;
+    }
+}
@@ -15,16 +15,50 @@
  */
 package de.tschumacher.queueservice.message;
 
+import java.util.HashMap;
+import java.util.Map;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 @Data
 @Builder
 public class SQSMessage<T> {
     private String messageId;
     private String messageGroupId;
+    private String messageDeduplicationId;
     private String receiptHandle;
     private String plainContent;
     private Integer delay;
+    private Long sentTimestamp;
+    private Long approximateFirstReceiveTimestamp;
+    private Integer approximateReceiveCount;
     private T content;
+
+    @Builder.Default
+    private Map<String, MessageAttribute> messageAttributes = new HashMap<>();
+
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private MessageAcknowledgement acknowledgement;
+
+    public MessageAttribute getMessageAttribute(String name) {
+        return messageAttributes != null ? messageAttributes.get(name) : null;
+    }
+
+    public void ack() {
+        requireAcknowledgement().ack();
+    }
+
+    public void nack() {
+        requireAcknowledgement().nack();
+    }
+
+    private MessageAcknowledgement requireAcknowledgement() {
+        if (acknowledgement == null) {
+            throw new IllegalStateException("Message " + messageId + " cannot be acknowledged explicitly");
+        }
+        return acknowledgement;
+    }
 }
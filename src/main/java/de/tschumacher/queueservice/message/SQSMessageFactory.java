@@ -17,6 +17,7 @@ package de.tschumacher.queueservice.message;
 
 import com.amazonaws.services.sqs.model.Message;
 import de.tschumacher.queueservice.message.coder.SQSCoder;
+import java.util.Map;
 import lombok.AllArgsConstructor;
 
 @AllArgsConstructor
@@ -25,14 +26,30 @@ public class SQSMessageFactory<F> {
 
     public SQSMessage<F> createSQSMessage(Message message) {
         F content = coder.encode(message.getBody());
-        return SQSMessage
+        Map<String, String> attributes = message.getAttributes();
+        SQSMessage<F> sqsMessage = SQSMessage
             .<F>builder()
             .content(content)
             .plainContent(message.getBody())
             .messageId(message.getMessageId())
-            .messageGroupId(message.getAttributes().get("MessageGroupId"))
+            .messageGroupId(attributes.get("MessageGroupId"))
+            .sentTimestamp(parseLong(attributes.get("SentTimestamp")))
+            .approximateFirstReceiveTimestamp(parseLong(attributes.get("ApproximateFirstReceiveTimestamp")))
+            .approximateReceiveCount(parseInteger(attributes.get("ApproximateReceiveCount")))
             .receiptHandle(message.getReceiptHandle())
             .build();
+        if (!message.getMessageAttributes().isEmpty()) {
+            sqsMessage.setMessageAttributes(MessageAttribute.fromSQSAttributes(message.getMessageAttributes()));
+        }
+        return sqsMessage;
+    }
+
+    private static Long parseLong(String value) {
+        return value != null ? Long.valueOf(value) : null;
+    }
+
+    private static Integer parseInteger(String value) {
+        return value != null ? Integer.valueOf(value) : null;
     }
 
     public SQSMessage<F> createSQSMessage(F body) {
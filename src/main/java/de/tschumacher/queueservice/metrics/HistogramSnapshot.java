@@ -0,0 +1,70 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.metrics;
+
+public class HistogramSnapshot {
+    private final long[] counts;
+    private final long count;
+
+    HistogramSnapshot(long[] counts) {
+        this.counts = counts;
+        long total = 0;
+        for (long bucket : counts) {
+            total += bucket;
+        }
+        this.count = total;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getPercentile(double percentile) {
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return LatencyHistogram.highestValueOf(i);
+            }
+        }
+        return 0;
+    }
+
+    public long getP50() {
+        return getPercentile(50);
+    }
+
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    public long getP999() {
+        return getPercentile(99.9);
+    }
+
+    public long getMax() {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] > 0) {
+                return LatencyHistogram.highestValueOf(i);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d p50=%d p99=%d p999=%d max=%d", count, getP50(), getP99(), getP999(), getMax());
+    }
+}
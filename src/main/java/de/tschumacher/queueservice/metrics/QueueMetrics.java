@@ -0,0 +1,137 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.metrics;
+
+import de.tschumacher.queueservice.sqs.QueueDepth;
+import de.tschumacher.queueservice.sqs.ReceiveErrorType;
+import java.util.concurrent.atomic.LongAdder;
+
+public class QueueMetrics {
+    private static final double DRAIN_RATE_SMOOTHING = 0.3;
+
+    private final LongAdder deletedMessages = new LongAdder();
+    private final LatencyHistogram lag = new LatencyHistogram();
+    private final LatencyHistogram dwell = new LatencyHistogram();
+    private final LatencyHistogram receiveTime = new LatencyHistogram();
+    private final LatencyHistogram sendTime = new LatencyHistogram();
+    private final LatencyHistogram ackTime = new LatencyHistogram();
+    private final LongAdder[] receiveErrors = new LongAdder[ReceiveErrorType.values().length];
+    private volatile QueueDepth queueDepth;
+
+    public QueueMetrics() {
+        for (int i = 0; i < receiveErrors.length; i++) {
+            receiveErrors[i] = new LongAdder();
+        }
+    }
+
+    public void messagesDeleted(int count) {
+        deletedMessages.add(count);
+    }
+
+    public long getDeletedMessages() {
+        return deletedMessages.sum();
+    }
+
+    /**
+     * Records a received message. Lag is the time from send until this receive, dwell the time from send until the
+     * first receive of the message by any consumer, both in milliseconds. Missing timestamps are passed as 0.
+     */
+    public void messageReceived(long receivedAt, long sentTimestamp, long firstReceiveTimestamp) {
+        if (sentTimestamp == 0) {
+            return;
+        }
+        lag.record(receivedAt - sentTimestamp);
+        if (firstReceiveTimestamp != 0) {
+            dwell.record(firstReceiveTimestamp - sentTimestamp);
+        }
+    }
+
+    public LatencyHistogram getLag() {
+        return lag;
+    }
+
+    public LatencyHistogram getDwell() {
+        return dwell;
+    }
+
+    /** Duration of receive calls in microseconds, including long polling. */
+    public LatencyHistogram getReceiveTime() {
+        return receiveTime;
+    }
+
+    /** Duration of send calls in microseconds, until SQS acknowledged the message. */
+    public LatencyHistogram getSendTime() {
+        return sendTime;
+    }
+
+    /** Duration of delete calls in microseconds. */
+    public LatencyHistogram getAckTime() {
+        return ackTime;
+    }
+
+    public void receiveFailed(ReceiveErrorType type) {
+        receiveErrors[type.ordinal()].increment();
+    }
+
+    public long getReceiveErrors(ReceiveErrorType type) {
+        return receiveErrors[type.ordinal()].sum();
+    }
+
+    public QueueDepth getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getBacklog() {
+        QueueDepth depth = queueDepth;
+        return depth != null ? depth.getBacklog() : 0;
+    }
+
+    public double getEstimatedDrainSeconds() {
+        QueueDepth depth = queueDepth;
+        return depth != null ? depth.getEstimatedDrainSeconds() : 0;
+    }
+
+    /**
+     * Records a new sample and derives the drain rate from how fast the backlog shrank since the previous one,
+     * smoothed over past samples. A growing backlog gives a negative rate and an infinite drain time.
+     */
+    public synchronized QueueDepth queueDepthSampled(long timestamp, long visible, long notVisible, long delayed) {
+        QueueDepth previous = queueDepth;
+        long backlog = visible + delayed;
+
+        double drainRate = 0;
+        if (previous != null && timestamp > previous.getTimestamp()) {
+            double seconds = (timestamp - previous.getTimestamp()) / 1000.0;
+            double sampleRate = (previous.getBacklog() - backlog) / seconds;
+            drainRate =
+                DRAIN_RATE_SMOOTHING * sampleRate + (1 - DRAIN_RATE_SMOOTHING) * previous.getDrainRatePerSecond();
+        }
+
+        double estimatedDrainSeconds = backlog == 0
+            ? 0
+            : drainRate > 0 ? backlog / drainRate : Double.POSITIVE_INFINITY;
+
+        queueDepth =
+            QueueDepth
+                .builder()
+                .timestamp(timestamp)
+                .visible(visible)
+                .notVisible(notVisible)
+                .delayed(delayed)
+                .drainRatePerSecond(drainRate)
+                .estimatedDrainSeconds(estimatedDrainSeconds)
+                .build();
+        return queueDepth;
+    }
+}
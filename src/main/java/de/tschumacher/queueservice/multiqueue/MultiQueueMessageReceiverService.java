@@ -0,0 +1,290 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.multiqueue;
+
+import com.amazonaws.services.sqs.model.Message;
+import de.tschumacher.queueservice.MessageReceiver;
+import de.tschumacher.queueservice.message.MessageHandler;
+import de.tschumacher.queueservice.message.SQSMessageFactory;
+import de.tschumacher.queueservice.sqs.MessageGroups;
+import de.tschumacher.queueservice.sqs.SQSQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Consumes many queues with one shared set of pollers and one shared handler pool. The {@link QueueScheduler}
+ * decides which queue is polled next, so busy queues can use the capacity idle queues leave unused.
+ */
+public class MultiQueueMessageReceiverService {
+    private static final Logger logger = LoggerFactory.getLogger(MultiQueueMessageReceiverService.class);
+    private static final int DEFAULT_POLLER_COUNT = 4;
+    private static final int DEFAULT_HANDLER_COUNT = 16;
+    private static final long DEFAULT_SHUTDOWN_TIMEOUT_SECONDS = 30;
+    private static final long MAX_IDLE_SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // Idle queues are paced by the scheduler's backoff, so a long poll would only keep a shared poller from the busy
+    // queues. One second still asks every SQS server, so a non-empty queue does not come back empty.
+    private static final int POLL_WAIT_SECONDS = 1;
+
+    private final QueueScheduler scheduler;
+    private final int pollerCount;
+    private final ExecutorService pollerExecutor;
+    private final ExecutorService handlerExecutor;
+    private final Semaphore handlerCapacity;
+    private final Map<SQSQueue, Queue<String>> unprocessed = new ConcurrentHashMap<>();
+    private volatile boolean running = false;
+
+    public MultiQueueMessageReceiverService() {
+        this(new WeightedFairQueueScheduler(), DEFAULT_POLLER_COUNT, DEFAULT_HANDLER_COUNT);
+    }
+
+    public MultiQueueMessageReceiverService(QueueScheduler scheduler, int pollerCount, int handlerCount) {
+        this.scheduler = scheduler;
+        this.pollerCount = pollerCount;
+        this.pollerExecutor = Executors.newFixedThreadPool(pollerCount);
+        this.handlerExecutor = Executors.newFixedThreadPool(handlerCount);
+        this.handlerCapacity = new Semaphore(handlerCount * 2);
+    }
+
+    public <F> void register(SQSQueue queue, MessageHandler<F> handler, SQSMessageFactory<F> factory) {
+        register(queue, handler, factory, 1);
+    }
+
+    public <F> void register(SQSQueue queue, MessageHandler<F> handler, SQSMessageFactory<F> factory, int weight) {
+        register(queue, new MessageReceiver<>(handler, factory), weight);
+    }
+
+    public void register(SQSQueue queue, MessageReceiver<?> receiver, int weight) {
+        scheduler.register(new QueueRegistration(queue, receiver, weight));
+    }
+
+    public void start() {
+        this.running = true;
+        for (int i = 0; i < pollerCount; i++) {
+            this.pollerExecutor.submit(this::poll);
+        }
+    }
+
+    public void stop() {
+        stop(DEFAULT_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public boolean stop(long timeout, TimeUnit unit) {
+        this.running = false;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean drained = false;
+        try {
+            this.pollerExecutor.shutdown();
+            if (this.pollerExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                this.handlerExecutor.shutdown();
+                drained =
+                    this.handlerExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!drained) {
+            logger.warn("Receiver did not finish within {} {}, interrupting", timeout, unit);
+            this.pollerExecutor.shutdownNow();
+            for (Runnable task : this.handlerExecutor.shutdownNow()) {
+                ((GroupTask) task).abandon();
+            }
+        }
+        releaseUnprocessed();
+        return drained;
+    }
+
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    private void poll() {
+        while (this.running) {
+            long now = System.nanoTime();
+            QueueRegistration registration = this.scheduler.next(now);
+            try {
+                if (registration == null) {
+                    TimeUnit.NANOSECONDS.sleep(Math.min(this.scheduler.nanosUntilEligible(now), MAX_IDLE_SLEEP_NANOS));
+                    continue;
+                }
+
+                long cooldown = registration.getQueue().getReceiveBackoff().getCooldownMillis();
+                if (cooldown > 0) {
+                    this.scheduler.defer(registration, now + TimeUnit.MILLISECONDS.toNanos(cooldown));
+                    continue;
+                }
+                if (!registration.getReceiver().tryStartPoll()) {
+                    this.scheduler.completed(registration, 0, now);
+                    continue;
+                }
+
+                this.handlerCapacity.acquire();
+                List<Message> messages = receive(registration);
+                if (messages.isEmpty()) {
+                    this.handlerCapacity.release();
+                    registration.getReceiver().pollCompleted();
+                    continue;
+                }
+                dispatch(registration, messages);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private List<Message> receive(QueueRegistration registration) {
+        List<Message> messages;
+        long delay = 0;
+        try {
+            messages = registration.getQueue().receiveMessages(POLL_WAIT_SECONDS);
+        } catch (final Throwable e) {
+            delay = registration.getQueue().getReceiveBackoff().onError(e);
+            logger.error("Receiving message failed, retrying queue in {} ms", delay, e);
+            messages = new ArrayList<>();
+        }
+        long now = System.nanoTime();
+        this.scheduler.completed(registration, messages.size(), now);
+        if (delay > 0) {
+            this.scheduler.defer(registration, now + TimeUnit.MILLISECONDS.toNanos(delay));
+        }
+        return messages;
+    }
+
+    /**
+     * Hands every message group of the batch to the handler executor as one task, so messages sharing a
+     * MessageGroupId are handled in order on a single thread.
+     */
+    private void dispatch(QueueRegistration registration, List<Message> messages) throws InterruptedException {
+        AtomicInteger remaining = new AtomicInteger(messages.size());
+        List<List<Message>> groups = MessageGroups.split(messages);
+        for (int i = 0; i < groups.size(); i++) {
+            List<Message> group = groups.get(i);
+            try {
+                if (i > 0) {
+                    this.handlerCapacity.acquire();
+                }
+                this.handlerExecutor.execute(new GroupTask(this, registration, group, remaining));
+            } catch (final RejectedExecutionException e) {
+                this.handlerCapacity.release();
+                markUnprocessed(registration, groups.subList(i, groups.size()), remaining);
+                return;
+            } catch (final InterruptedException e) {
+                markUnprocessed(registration, groups.subList(i, groups.size()), remaining);
+                throw e;
+            }
+        }
+    }
+
+    private void handle(QueueRegistration registration, List<Message> group, AtomicInteger remaining) {
+        try {
+            for (Message message : group) {
+                try {
+                    if (this.running) {
+                        registration.getReceiver().handleMessage(registration.getQueue(), message);
+                    } else {
+                        markUnprocessed(registration.getQueue(), message);
+                    }
+                } finally {
+                    handled(registration, remaining);
+                }
+            }
+        } finally {
+            this.handlerCapacity.release();
+        }
+    }
+
+    /** Completes the poll towards the receiver once the last of its messages was handled. */
+    private void handled(QueueRegistration registration, AtomicInteger remaining) {
+        if (remaining.decrementAndGet() == 0) {
+            registration.getReceiver().pollCompleted();
+        }
+    }
+
+    private void markUnprocessed(
+        QueueRegistration registration,
+        List<List<Message>> groups,
+        AtomicInteger remaining
+    ) {
+        for (List<Message> group : groups) {
+            for (Message message : group) {
+                markUnprocessed(registration.getQueue(), message);
+                handled(registration, remaining);
+            }
+        }
+    }
+
+    private void markUnprocessed(SQSQueue queue, Message message) {
+        this.unprocessed.computeIfAbsent(queue, q -> new ConcurrentLinkedQueue<>()).add(message.getReceiptHandle());
+    }
+
+    private void releaseUnprocessed() {
+        for (Map.Entry<SQSQueue, Queue<String>> entry : this.unprocessed.entrySet()) {
+            List<String> receiptHandles = new ArrayList<>();
+            String receiptHandle;
+            while ((receiptHandle = entry.getValue().poll()) != null) {
+                receiptHandles.add(receiptHandle);
+            }
+            if (!receiptHandles.isEmpty()) {
+                try {
+                    entry.getKey().releaseMessages(receiptHandles);
+                } catch (final Throwable e) {
+                    logger.error("Releasing unprocessed messages failed", e);
+                }
+            }
+        }
+    }
+
+    /** Handler task for one message group, kept as a class so tasks dropped on shutdown can be released. */
+    private static final class GroupTask implements Runnable {
+        private final MultiQueueMessageReceiverService service;
+        private final QueueRegistration registration;
+        private final List<Message> group;
+        private final AtomicInteger remaining;
+
+        GroupTask(
+            MultiQueueMessageReceiverService service,
+            QueueRegistration registration,
+            List<Message> group,
+            AtomicInteger remaining
+        ) {
+            this.service = service;
+            this.registration = registration;
+            this.group = group;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public void run() {
+            service.handle(registration, group, remaining);
+        }
+
+        void abandon() {
+            service.markUnprocessed(registration, Collections.singletonList(group), remaining);
+            service.handlerCapacity.release();
+        }
+    }
+}
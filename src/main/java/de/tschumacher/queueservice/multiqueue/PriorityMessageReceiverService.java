@@ -0,0 +1,54 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.multiqueue;
+
+import de.tschumacher.queueservice.MessageReceiver;
+import de.tschumacher.queueservice.message.MessageHandler;
+import de.tschumacher.queueservice.message.SQSMessageFactory;
+import de.tschumacher.queueservice.sqs.SQSQueue;
+import java.util.List;
+
+/**
+ * Consumes an ordered list of queues with the same handler, draining earlier queues first while guaranteeing every
+ * later queue at least {@code minShare} of the polls. Lower tiers should use short wait times, otherwise a poller can
+ * sit in a long poll on an empty bulk queue while higher tiers fill up.
+ */
+public class PriorityMessageReceiverService<F> extends MultiQueueMessageReceiverService {
+    private static final int DEFAULT_POLLER_COUNT = 4;
+    private static final int DEFAULT_HANDLER_COUNT = 16;
+
+    public PriorityMessageReceiverService(
+        List<SQSQueue> tiers,
+        MessageHandler<F> handler,
+        SQSMessageFactory<F> factory,
+        double minShare
+    ) {
+        this(tiers, handler, factory, minShare, DEFAULT_POLLER_COUNT, DEFAULT_HANDLER_COUNT);
+    }
+
+    public PriorityMessageReceiverService(
+        List<SQSQueue> tiers,
+        MessageHandler<F> handler,
+        SQSMessageFactory<F> factory,
+        double minShare,
+        int pollerCount,
+        int handlerCount
+    ) {
+        super(new PriorityQueueScheduler(minShare), pollerCount, handlerCount);
+        MessageReceiver<F> receiver = new MessageReceiver<>(handler, factory);
+        for (SQSQueue tier : tiers) {
+            register(tier, receiver, 1);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.multiqueue;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Polls queues strictly in registration order, highest tier first. To keep lower tiers from starving, every tier
+ * below the top earns {@code minShare} credit per poll it is passed over for and is polled as soon as it holds a
+ * full credit. The credit is capped at an equal share of the eligible tiers, so lower tiers together can never
+ * take every poll from the top one.
+ */
+public class PriorityQueueScheduler extends QueueScheduler {
+    private static final long DEFAULT_MIN_BACKOFF_MILLIS = 200;
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = 2000;
+
+    private final double minShare;
+    private final Map<QueueRegistration, Double> credits = new IdentityHashMap<>();
+
+    public PriorityQueueScheduler(double minShare) {
+        this(minShare, DEFAULT_MIN_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS);
+    }
+
+    public PriorityQueueScheduler(double minShare, long minBackoffMillis, long maxBackoffMillis) {
+        super(minBackoffMillis, maxBackoffMillis);
+        if (minShare < 0 || minShare > 1) {
+            throw new IllegalArgumentException("minShare must be between 0 and 1");
+        }
+        this.minShare = minShare;
+    }
+
+    @Override
+    protected QueueRegistration select(List<QueueRegistration> eligible) {
+        QueueRegistration highest = eligible.get(0);
+
+        double share = Math.min(minShare, 1.0 / eligible.size());
+        QueueRegistration starved = null;
+        double starvedCredit = 0;
+        for (int i = 1; i < eligible.size(); i++) {
+            QueueRegistration registration = eligible.get(i);
+            double credit = credits.getOrDefault(registration, 0.0) + share;
+            credits.put(registration, credit);
+            if (credit >= 1 && credit > starvedCredit) {
+                starved = registration;
+                starvedCredit = credit;
+            }
+        }
+
+        QueueRegistration selected = starved != null ? starved : highest;
+        credits.put(selected, selected == starved ? starvedCredit - 1 : 0.0);
+        return selected;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.multiqueue;
+
+import de.tschumacher.queueservice.MessageReceiver;
+import de.tschumacher.queueservice.sqs.SQSQueue;
+import lombok.Getter;
+
+@Getter
+public class QueueRegistration {
+    private final SQSQueue queue;
+    private final MessageReceiver<?> receiver;
+    private final int weight;
+
+    long nextPollAt;
+    int emptyPolls;
+    double pass;
+    boolean polling;
+
+    public QueueRegistration(SQSQueue queue, MessageReceiver<?> receiver, int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("weight must be at least 1");
+        }
+        if (receiver.isCoalescing()) {
+            throw new IllegalArgumentException("coalescing receivers are not supported by multi-queue services");
+        }
+        this.queue = queue;
+        this.receiver = receiver;
+        this.weight = weight;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.multiqueue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which registered queue a poller polls next. Queues whose last poll came back empty back off
+ * exponentially and are not offered to {@link #select(List)} until their backoff has expired. A queue is handed to
+ * one poller at a time, it becomes eligible again once its poll is {@link #completed} or {@link #defer deferred}.
+ */
+public abstract class QueueScheduler {
+    private static final long DEFAULT_MIN_BACKOFF_MILLIS = 500;
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = 20000;
+
+    private final List<QueueRegistration> registrations = new ArrayList<>();
+    private final long minBackoffNanos;
+    private final long maxBackoffNanos;
+
+    protected QueueScheduler() {
+        this(DEFAULT_MIN_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS);
+    }
+
+    protected QueueScheduler(long minBackoffMillis, long maxBackoffMillis) {
+        this.minBackoffNanos = TimeUnit.MILLISECONDS.toNanos(minBackoffMillis);
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis);
+    }
+
+    public synchronized void register(QueueRegistration registration) {
+        registrations.add(registration);
+    }
+
+    public synchronized List<QueueRegistration> getRegistrations() {
+        return Collections.unmodifiableList(new ArrayList<>(registrations));
+    }
+
+    /**
+     * Returns the queue to poll next or null if all queues are backing off.
+     */
+    public synchronized QueueRegistration next(long now) {
+        List<QueueRegistration> eligible = new ArrayList<>(registrations.size());
+        for (QueueRegistration registration : registrations) {
+            if (!registration.polling && registration.nextPollAt - now <= 0) {
+                eligible.add(registration);
+            }
+        }
+        if (eligible.isEmpty()) {
+            return null;
+        }
+        QueueRegistration selected = select(eligible);
+        selected.polling = true;
+        return selected;
+    }
+
+    public synchronized long nanosUntilEligible(long now) {
+        long min = Long.MAX_VALUE;
+        for (QueueRegistration registration : registrations) {
+            if (!registration.polling) {
+                min = Math.min(min, Math.max(0, registration.nextPollAt - now));
+            }
+        }
+        return min;
+    }
+
+    public synchronized void completed(QueueRegistration registration, int received, long now) {
+        registration.polling = false;
+        if (received > 0) {
+            registration.emptyPolls = 0;
+            registration.nextPollAt = now;
+            return;
+        }
+
+        int shift = Math.min(registration.emptyPolls, 20);
+        long backoff = Math.min(maxBackoffNanos, minBackoffNanos << shift);
+        registration.emptyPolls++;
+        registration.nextPollAt = now + backoff;
+    }
+
+    /** Keeps the queue from being selected before the given time, e.g. while its receives are failing. */
+    public synchronized void defer(QueueRegistration registration, long until) {
+        registration.polling = false;
+        if (until - registration.nextPollAt > 0) {
+            registration.nextPollAt = until;
+        }
+    }
+
+    protected abstract QueueRegistration select(List<QueueRegistration> eligible);
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.multiqueue;
+
+import de.tschumacher.queueservice.MessageReceiver;
+import de.tschumacher.queueservice.message.MessageHandler;
+import de.tschumacher.queueservice.message.SQSMessageFactory;
+import de.tschumacher.queueservice.sqs.SQSQueue;
+import de.tschumacher.queueservice.sqs.ShardedSQSQueue;
+
+/**
+ * Consumes all shards of a sharded queue with one handler. The shards are polled with equal weights, and shards that
+ * run empty back off, so pollers follow the backlog.
+ */
+public class ShardedMessageReceiverService<F> extends MultiQueueMessageReceiverService {
+    private static final int DEFAULT_POLLER_COUNT = 4;
+    private static final int DEFAULT_HANDLER_COUNT = 16;
+
+    public ShardedMessageReceiverService(
+        ShardedSQSQueue shardedQueue,
+        MessageHandler<F> handler,
+        SQSMessageFactory<F> factory
+    ) {
+        this(shardedQueue, new MessageReceiver<>(handler, factory), DEFAULT_POLLER_COUNT, DEFAULT_HANDLER_COUNT);
+    }
+
+    public ShardedMessageReceiverService(
+        ShardedSQSQueue shardedQueue,
+        MessageReceiver<F> receiver,
+        int pollerCount,
+        int handlerCount
+    ) {
+        super(new WeightedFairQueueScheduler(), pollerCount, handlerCount);
+        for (SQSQueue shard : shardedQueue.getShards()) {
+            register(shard, receiver, 1);
+        }
+    }
+}
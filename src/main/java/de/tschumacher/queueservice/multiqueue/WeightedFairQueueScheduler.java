@@ -0,0 +1,50 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.multiqueue;
+
+import java.util.List;
+
+/**
+ * Stride scheduling: every poll advances a queue's pass by 1 / weight and the queue with the lowest pass is polled
+ * next. Queues coming back from backoff start at the current virtual time so they cannot claim the polls they
+ * missed while idle.
+ */
+public class WeightedFairQueueScheduler extends QueueScheduler {
+    private double virtualTime;
+
+    public WeightedFairQueueScheduler() {
+        super();
+    }
+
+    public WeightedFairQueueScheduler(long minBackoffMillis, long maxBackoffMillis) {
+        super(minBackoffMillis, maxBackoffMillis);
+    }
+
+    @Override
+    protected QueueRegistration select(List<QueueRegistration> eligible) {
+        QueueRegistration selected = null;
+        double selectedPass = Double.MAX_VALUE;
+        for (QueueRegistration registration : eligible) {
+            double pass = Math.max(registration.pass, virtualTime);
+            if (pass < selectedPass) {
+                selected = registration;
+                selectedPass = pass;
+            }
+        }
+
+        virtualTime = selectedPass;
+        selected.pass = selectedPass + 1.0 / selected.getWeight();
+        return selected;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.ratelimit;
+
+public interface RateLimiter {
+    RateLimiter UNLIMITED = new RateLimiter() {
+
+        @Override
+        public void acquire(int permits) {}
+
+        @Override
+        public boolean tryAcquire(int permits) {
+            return true;
+        }
+
+        @Override
+        public void charge(int permits) {}
+    };
+
+    void acquire(int permits);
+
+    boolean tryAcquire(int permits);
+
+    /**
+     * Takes the given number of permits without waiting, even if the bucket goes into debt. Subsequent callers
+     * wait until the debt is paid off.
+     */
+    void charge(int permits);
+
+    static RateLimiter create(double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            return UNLIMITED;
+        }
+        return new TokenBucketRateLimiter(permitsPerSecond, (int) Math.max(1, Math.ceil(permitsPerSecond)));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket. Instead of counting tokens it keeps the point in time at which the bucket is full
+ * again, so taking permits is a single CAS on that timestamp.
+ */
+public class TokenBucketRateLimiter implements RateLimiter {
+    private final long nanosPerPermit;
+    private final long capacityNanos;
+    private final LongSupplier clock;
+    private final AtomicLong fullAt;
+
+    public TokenBucketRateLimiter(double permitsPerSecond, int capacity) {
+        this(permitsPerSecond, capacity, System::nanoTime);
+    }
+
+    TokenBucketRateLimiter(double permitsPerSecond, int capacity, LongSupplier clock) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.nanosPerPermit = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.capacityNanos = this.nanosPerPermit * capacity;
+        this.clock = clock;
+        this.fullAt = new AtomicLong(clock.getAsLong());
+    }
+
+    @Override
+    public void acquire(int permits) {
+        long deadline = reserve(permits);
+        long waitNanos;
+        while ((waitNanos = deadline - clock.getAsLong()) > 0) {
+            LockSupport.parkNanos(waitNanos);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean tryAcquire(int permits) {
+        while (true) {
+            long now = clock.getAsLong();
+            long current = fullAt.get();
+            long next = Math.max(current, now) + permits * nanosPerPermit;
+            if (next - capacityNanos > now) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void charge(int permits) {
+        reserve(permits);
+    }
+
+    private long reserve(int permits) {
+        while (true) {
+            long now = clock.getAsLong();
+            long current = fullAt.get();
+            long next = Math.max(current, now) + permits * nanosPerPermit;
+            if (fullAt.compareAndSet(current, next)) {
+                return next - capacityNanos;
+            }
+        }
+    }
+}
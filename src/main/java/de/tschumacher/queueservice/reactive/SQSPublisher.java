@@ -0,0 +1,194 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.reactive;
+
+import com.amazonaws.services.sqs.model.Message;
+import de.tschumacher.queueservice.message.MessageAcknowledgement;
+import de.tschumacher.queueservice.message.SQSMessage;
+import de.tschumacher.queueservice.message.SQSMessageFactory;
+import de.tschumacher.queueservice.sqs.SQSQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.AllArgsConstructor;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exposes a queue as a reactive-streams publisher. Every subscriber gets its own subscription competing for messages
+ * with all other consumers of the queue. Messages are only received while there is outstanding demand, and never
+ * more than requested, so a slow subscriber holds no messages beyond what it asked for. Subscribers acknowledge
+ * every message with {@link SQSMessage#ack()} or {@link SQSMessage#nack()}; unacknowledged messages become visible
+ * again after the visibility timeout.
+ */
+@AllArgsConstructor
+public class SQSPublisher<T> implements Publisher<SQSMessage<T>> {
+    private static final Logger logger = LoggerFactory.getLogger(SQSPublisher.class);
+
+    private final SQSQueue queue;
+    private final SQSMessageFactory<T> factory;
+
+    @Override
+    public void subscribe(Subscriber<? super SQSMessage<T>> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        QueueSubscription subscription = new QueueSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private class QueueSubscription implements Subscription {
+        private final Subscriber<? super SQSMessage<T>> subscriber;
+        private final Queue<Message> buffer = new ConcurrentLinkedQueue<>();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger buffered = new AtomicInteger();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean receiving;
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+
+        QueueSubscription(Subscriber<? super SQSMessage<T>> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Requested " + n + " messages, must be positive");
+            } else {
+                requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        /** Serializes all signals to the subscriber; whichever thread gets here first does the work for all. */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            do {
+                emit();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            while (!cancelled && error == null && requested.get() > 0) {
+                Message message = buffer.poll();
+                if (message == null) {
+                    break;
+                }
+                buffered.decrementAndGet();
+                SQSMessage<T> sqsMessage = createMessage(message);
+                if (sqsMessage != null) {
+                    requested.decrementAndGet();
+                    subscriber.onNext(sqsMessage);
+                }
+            }
+
+            if (cancelled) {
+                releaseBuffer();
+                return;
+            }
+            if (error != null) {
+                cancelled = true;
+                releaseBuffer();
+                subscriber.onError(error);
+                return;
+            }
+
+            long outstanding = requested.get() - buffered.get();
+            if (outstanding > 0 && !receiving) {
+                receiving = true;
+                CompletableFuture<List<Message>> messages;
+                try {
+                    messages = queue.receiveMessagesAsync((int) Math.min(outstanding, Integer.MAX_VALUE));
+                } catch (final Throwable e) {
+                    // Rule 3.16: request must return normally, so a failing receive ends the subscription instead.
+                    receiving = false;
+                    cancelled = true;
+                    releaseBuffer();
+                    subscriber.onError(e);
+                    return;
+                }
+                messages.whenComplete(this::received);
+            }
+        }
+
+        private void received(List<Message> messages, Throwable e) {
+            if (e != null) {
+                error = e;
+            } else {
+                buffered.addAndGet(messages.size());
+                buffer.addAll(messages);
+            }
+            receiving = false;
+            drain();
+        }
+
+        private SQSMessage<T> createMessage(Message message) {
+            try {
+                SQSMessage<T> sqsMessage = factory.createSQSMessage(message);
+                sqsMessage.setAcknowledgement(new QueueAcknowledgement(queue, message.getReceiptHandle()));
+                return sqsMessage;
+            } catch (final Throwable e) {
+                logger.error("Decoding message failed for ID {}: {}", message.getMessageId(), e.getMessage(), e);
+                queue.retryMessage(message.getReceiptHandle());
+                return null;
+            }
+        }
+
+        private void releaseBuffer() {
+            List<String> receiptHandles = new ArrayList<>();
+            Message message;
+            while ((message = buffer.poll()) != null) {
+                buffered.decrementAndGet();
+                receiptHandles.add(message.getReceiptHandle());
+            }
+            if (!receiptHandles.isEmpty()) {
+                queue.releaseMessages(receiptHandles);
+            }
+        }
+    }
+
+    @AllArgsConstructor
+    private static class QueueAcknowledgement implements MessageAcknowledgement {
+        private final SQSQueue queue;
+        private final String receiptHandle;
+
+        @Override
+        public void ack() {
+            queue.deleteMessage(receiptHandle);
+        }
+
+        @Override
+        public void nack() {
+            queue.retryMessage(receiptHandle);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.resolution;
+
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide cache for queue URLs, ARNs and applied policies. Entries are scoped by the AWS client they were
+ * resolved with and loaded asynchronously, so many queues can be resolved in parallel. A cache can optionally be
+ * backed by a file to survive restarts, keys stored there have to carry the {@link #clientScope client scope}
+ * themselves.
+ */
+public class ResolutionCache {
+    private static final ResolutionCache SHARED = new ResolutionCache(null);
+    private static final ConcurrentMap<String, ResolutionCache> FILE_CACHES = new ConcurrentHashMap<>();
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ResolutionThreadFactory());
+
+    private final Map<Object, ConcurrentMap<String, CompletableFuture<String>>> scopes = Collections.synchronizedMap(
+        new WeakHashMap<>()
+    );
+    private final ResolutionFileStore fileStore;
+
+    ResolutionCache(ResolutionFileStore fileStore) {
+        this.fileStore = fileStore;
+    }
+
+    public static ResolutionCache shared() {
+        return SHARED;
+    }
+
+    public static ResolutionCache forFile(String file) {
+        if (file == null) {
+            return SHARED;
+        }
+        return FILE_CACHES.computeIfAbsent(file, f -> new ResolutionCache(new ResolutionFileStore(Paths.get(f))));
+    }
+
+    public static ExecutorService executor() {
+        return EXECUTOR;
+    }
+
+    /** Identifies the account and region of a client, for keys that outlive the client in the cache file. */
+    public static String clientScope(String accessKey, String region) {
+        return (accessKey != null ? accessKey : "default") + "@" + region;
+    }
+
+    public CompletableFuture<String> resolve(Object scope, String key, Supplier<String> loader) {
+        return resolve(scope, key, loader, true);
+    }
+
+    /**
+     * Resolves the key once per scope. Values that stop being valid when another resource is re-created, like a
+     * subscription of a topic, should not be persisted, as a later process could not tell.
+     */
+    public CompletableFuture<String> resolve(Object scope, String key, Supplier<String> loader, boolean persistent) {
+        ConcurrentMap<String, CompletableFuture<String>> entries = entries(scope);
+
+        CompletableFuture<String> existing = entries.get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        existing = entries.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing;
+        }
+
+        EXECUTOR.execute(
+            () -> {
+                try {
+                    future.complete(persistent ? load(key, loader) : loader.get());
+                } catch (final Throwable e) {
+                    entries.remove(key, future);
+                    future.completeExceptionally(e);
+                }
+            }
+        );
+        return future;
+    }
+
+    /**
+     * Runs the writer unless the same value was already applied for this key by this process. Applied values are
+     * not persisted, the resource may have been re-created since, so every process writes each value once.
+     */
+    public boolean applyIfChanged(Object scope, String key, String value, Runnable writer) {
+        ConcurrentMap<String, CompletableFuture<String>> entries = entries(scope);
+
+        CompletableFuture<String> current = entries.get(key);
+        String applied = current != null && current.isDone() && !current.isCompletedExceptionally()
+            ? current.join()
+            : null;
+        if (value.equals(applied)) {
+            return false;
+        }
+
+        writer.run();
+        entries.put(key, CompletableFuture.completedFuture(value));
+        return true;
+    }
+
+    public void invalidate(Object scope, String key) {
+        ConcurrentMap<String, CompletableFuture<String>> entries = scopes.get(scope);
+        if (entries != null) {
+            entries.remove(key);
+        }
+        if (fileStore != null) {
+            fileStore.remove(key);
+        }
+    }
+
+    /** Drops every key starting with the prefix, like the values depending on a resource that is re-created. */
+    public void invalidateAll(Object scope, String prefix) {
+        ConcurrentMap<String, CompletableFuture<String>> entries = scopes.get(scope);
+        if (entries != null) {
+            entries.keySet().removeIf(key -> key.startsWith(prefix));
+        }
+        if (fileStore != null) {
+            fileStore.removeAll(prefix);
+        }
+    }
+
+    private ConcurrentMap<String, CompletableFuture<String>> entries(Object scope) {
+        return scopes.computeIfAbsent(scope, s -> new ConcurrentHashMap<>());
+    }
+
+    private String load(String key, Supplier<String> loader) {
+        if (fileStore == null) {
+            return loader.get();
+        }
+
+        String value = fileStore.get(key);
+        if (value == null) {
+            value = loader.get();
+            fileStore.put(key, value);
+        }
+        return value;
+    }
+
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static class ResolutionThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "queueservice-resolution-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
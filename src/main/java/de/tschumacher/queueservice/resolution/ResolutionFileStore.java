@@ -0,0 +1,80 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.resolution;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+class ResolutionFileStore {
+    private static final Logger logger = LoggerFactory.getLogger(ResolutionFileStore.class);
+
+    private final Path file;
+    private final Properties properties = new Properties();
+
+    ResolutionFileStore(Path file) {
+        this.file = file;
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                properties.load(in);
+            } catch (final IOException e) {
+                logger.warn("Reading resolution cache {} failed", file, e);
+            }
+        }
+    }
+
+    synchronized String get(String key) {
+        return properties.getProperty(key);
+    }
+
+    synchronized void put(String key, String value) {
+        if (value == null || value.equals(properties.getProperty(key))) {
+            return;
+        }
+        properties.setProperty(key, value);
+        write();
+    }
+
+    synchronized void remove(String key) {
+        if (properties.remove(key) != null) {
+            write();
+        }
+    }
+
+    synchronized void removeAll(String prefix) {
+        if (properties.keySet().removeIf(key -> ((String) key).startsWith(prefix))) {
+            write();
+        }
+    }
+
+    private void write() {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, "queueservice resolution cache");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            logger.warn("Writing resolution cache {} failed", file, e);
+        }
+    }
+}
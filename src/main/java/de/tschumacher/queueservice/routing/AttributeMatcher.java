@@ -0,0 +1,52 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.routing;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import java.util.Set;
+import lombok.Getter;
+
+/** Matches one attribute against a set of values. Routes made of these can be compiled into a hash lookup. */
+@Getter
+class AttributeMatcher implements MessageMatcher {
+    private final boolean system;
+    private final String name;
+    private final Set<String> values;
+
+    AttributeMatcher(boolean system, String name, Set<String> values) {
+        this.system = system;
+        this.name = name;
+        this.values = values;
+    }
+
+    @Override
+    public boolean matches(Message message) {
+        String value = valueOf(message);
+        return value != null && values.contains(value);
+    }
+
+    String valueOf(Message message) {
+        return system ? message.getAttributes().get(name) : messageAttribute(message, name);
+    }
+
+    boolean sameAttribute(AttributeMatcher other) {
+        return system == other.system && name.equals(other.name);
+    }
+
+    static String messageAttribute(Message message, String name) {
+        MessageAttributeValue value = message.getMessageAttributes().get(name);
+        return value != null ? value.getStringValue() : null;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.routing;
+
+import com.amazonaws.services.sqs.model.Message;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.function.Predicate;
+
+/**
+ * Predicate over the attributes of a received message, evaluated before the body is decoded. System attributes are
+ * limited to the ones the queue requests on receive: SentTimestamp, ApproximateFirstReceiveTimestamp,
+ * ApproximateReceiveCount and MessageGroupId.
+ */
+@FunctionalInterface
+public interface MessageMatcher {
+    boolean matches(Message message);
+
+    default MessageMatcher and(MessageMatcher other) {
+        return message -> matches(message) && other.matches(message);
+    }
+
+    default MessageMatcher or(MessageMatcher other) {
+        return message -> matches(message) || other.matches(message);
+    }
+
+    default MessageMatcher negate() {
+        return message -> !matches(message);
+    }
+
+    static MessageMatcher any() {
+        return message -> true;
+    }
+
+    static MessageMatcher attributeEquals(String name, String value) {
+        return new AttributeMatcher(false, name, Collections.singleton(value));
+    }
+
+    static MessageMatcher attributeIn(String name, String... values) {
+        return new AttributeMatcher(false, name, new HashSet<>(Arrays.asList(values)));
+    }
+
+    static MessageMatcher attributeExists(String name) {
+        return message -> AttributeMatcher.messageAttribute(message, name) != null;
+    }
+
+    static MessageMatcher attribute(String name, Predicate<String> predicate) {
+        return message -> {
+            String value = AttributeMatcher.messageAttribute(message, name);
+            return value != null && predicate.test(value);
+        };
+    }
+
+    static MessageMatcher attributePrefix(String name, String prefix) {
+        return attribute(name, value -> value.startsWith(prefix));
+    }
+
+    static MessageMatcher systemAttributeEquals(String name, String value) {
+        return new AttributeMatcher(true, name, Collections.singleton(value));
+    }
+
+    static MessageMatcher systemAttributeIn(String name, String... values) {
+        return new AttributeMatcher(true, name, new HashSet<>(Arrays.asList(values)));
+    }
+}
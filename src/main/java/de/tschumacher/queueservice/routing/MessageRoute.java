@@ -0,0 +1,47 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.routing;
+
+import de.tschumacher.queueservice.message.MessageHandler;
+
+/** Target of a route: a handler, or dropping the message, which deletes it without decoding. */
+public final class MessageRoute<F> {
+    private static final MessageRoute<?> DROP = new MessageRoute<>(null);
+
+    private final MessageHandler<F> handler;
+
+    private MessageRoute(MessageHandler<F> handler) {
+        this.handler = handler;
+    }
+
+    public static <F> MessageRoute<F> to(MessageHandler<F> handler) {
+        if (handler == null) {
+            throw new IllegalArgumentException("Route handler must not be null, use drop() instead");
+        }
+        return new MessageRoute<>(handler);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <F> MessageRoute<F> drop() {
+        return (MessageRoute<F>) DROP;
+    }
+
+    public boolean isDrop() {
+        return handler == null;
+    }
+
+    public MessageHandler<F> getHandler() {
+        return handler;
+    }
+}
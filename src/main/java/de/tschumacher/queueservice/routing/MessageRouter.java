@@ -0,0 +1,133 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.routing;
+
+import com.amazonaws.services.sqs.model.Message;
+import de.tschumacher.queueservice.message.MessageHandler;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Picks the route of a received message from its attributes, before the body is decoded. Routes are checked in the
+ * order they were added and the first match wins. Consecutive routes that compare the same attribute against fixed
+ * values are compiled into a single hash lookup, so dispatching on an event type header costs one map access
+ * regardless of the number of routes.
+ */
+public class MessageRouter<F> {
+    private final List<Segment<F>> segments;
+    private final MessageRoute<F> unmatched;
+
+    private MessageRouter(List<Segment<F>> segments, MessageRoute<F> unmatched) {
+        this.segments = segments;
+        this.unmatched = unmatched;
+    }
+
+    public static <F> Builder<F> builder() {
+        return new Builder<>();
+    }
+
+    /** Returns the route of the message, or null if it should go to the receiver's default handler. */
+    public MessageRoute<F> route(Message message) {
+        // Indexed, routing runs for every message and should not allocate an iterator.
+        for (int i = 0; i < segments.size(); i++) {
+            MessageRoute<F> route = segments.get(i).route(message);
+            if (route != null) {
+                return route;
+            }
+        }
+        return unmatched;
+    }
+
+    public static class Builder<F> {
+        private final List<MessageMatcher> matchers = new ArrayList<>();
+        private final List<MessageRoute<F>> routes = new ArrayList<>();
+        private MessageRoute<F> unmatched;
+
+        public Builder<F> route(MessageMatcher matcher, MessageHandler<F> handler) {
+            return add(matcher, MessageRoute.to(handler));
+        }
+
+        public Builder<F> drop(MessageMatcher matcher) {
+            return add(matcher, MessageRoute.drop());
+        }
+
+        /** Drops messages no route matched instead of passing them to the receiver's default handler. */
+        public Builder<F> dropUnmatched() {
+            this.unmatched = MessageRoute.drop();
+            return this;
+        }
+
+        public Builder<F> otherwise(MessageHandler<F> handler) {
+            this.unmatched = MessageRoute.to(handler);
+            return this;
+        }
+
+        private Builder<F> add(MessageMatcher matcher, MessageRoute<F> route) {
+            matchers.add(matcher);
+            routes.add(route);
+            return this;
+        }
+
+        public MessageRouter<F> build() {
+            List<Segment<F>> segments = new ArrayList<>();
+            int i = 0;
+            while (i < matchers.size()) {
+                MessageMatcher matcher = matchers.get(i);
+                if (!(matcher instanceof AttributeMatcher)) {
+                    MessageRoute<F> route = routes.get(i);
+                    segments.add(message -> matcher.matches(message) ? route : null);
+                    i++;
+                    continue;
+                }
+
+                AttributeMatcher attribute = (AttributeMatcher) matcher;
+                Map<String, MessageRoute<F>> index = new HashMap<>();
+                while (i < matchers.size() && sameAttribute(attribute, matchers.get(i))) {
+                    for (String value : ((AttributeMatcher) matchers.get(i)).getValues()) {
+                        index.putIfAbsent(value, routes.get(i));
+                    }
+                    i++;
+                }
+                segments.add(new IndexedSegment<>(attribute, index));
+            }
+            return new MessageRouter<>(segments, unmatched);
+        }
+
+        private static boolean sameAttribute(AttributeMatcher attribute, MessageMatcher matcher) {
+            return matcher instanceof AttributeMatcher && attribute.sameAttribute((AttributeMatcher) matcher);
+        }
+    }
+
+    private interface Segment<F> {
+        MessageRoute<F> route(Message message);
+    }
+
+    private static class IndexedSegment<F> implements Segment<F> {
+        private final AttributeMatcher attribute;
+        private final Map<String, MessageRoute<F>> index;
+
+        IndexedSegment(AttributeMatcher attribute, Map<String, MessageRoute<F>> index) {
+            this.attribute = attribute;
+            this.index = index;
+        }
+
+        @Override
+        public MessageRoute<F> route(Message message) {
+            String value = attribute.valueOf(message);
+            return value != null ? index.get(value) : null;
+        }
+    }
+}
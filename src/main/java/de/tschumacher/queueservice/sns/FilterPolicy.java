@@ -0,0 +1,144 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.sns;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * SNS subscription filter policy on message attributes. Conditions on the same attribute match if any of them
+ * matches, conditions on different attributes all have to match. The JSON form is stable, so re-applying an unchanged
+ * policy can be detected and skipped.
+ */
+public final class FilterPolicy {
+    private static final FilterPolicy MATCH_ALL = new FilterPolicy("{}");
+
+    private final String json;
+
+    private FilterPolicy(String json) {
+        this.json = json;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** Policy without conditions, applying it removes an existing filter. */
+    public static FilterPolicy matchAll() {
+        return MATCH_ALL;
+    }
+
+    public String toJson() {
+        return json;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof FilterPolicy && json.equals(((FilterPolicy) o).json);
+    }
+
+    @Override
+    public int hashCode() {
+        return json.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return json;
+    }
+
+    public static class Builder {
+        private final Map<String, JsonArray> conditions = new TreeMap<>();
+
+        public Builder anyOf(String attribute, String... values) {
+            JsonArray condition = condition(attribute);
+            for (String value : values) {
+                condition.add(value);
+            }
+            return this;
+        }
+
+        public Builder anyOf(String attribute, Number... values) {
+            JsonArray condition = condition(attribute);
+            for (Number value : values) {
+                condition.add(value);
+            }
+            return this;
+        }
+
+        public Builder anythingBut(String attribute, String... values) {
+            JsonArray excluded = new JsonArray();
+            for (String value : values) {
+                excluded.add(value);
+            }
+            return add(attribute, "anything-but", excluded);
+        }
+
+        public Builder prefix(String attribute, String prefix) {
+            return add(attribute, "prefix", new JsonPrimitive(prefix));
+        }
+
+        public Builder exists(String attribute) {
+            return add(attribute, "exists", new JsonPrimitive(true));
+        }
+
+        public Builder notExists(String attribute) {
+            return add(attribute, "exists", new JsonPrimitive(false));
+        }
+
+        /** Numeric comparison, the operator is one of {@code =, <, <=, >, >=}. */
+        public Builder numeric(String attribute, String operator, Number value) {
+            JsonArray comparison = new JsonArray();
+            comparison.add(operator);
+            comparison.add(value);
+            return add(attribute, "numeric", comparison);
+        }
+
+        /** Matches values in {@code [from, to)}. */
+        public Builder numericBetween(String attribute, Number from, Number to) {
+            JsonArray comparison = new JsonArray();
+            comparison.add(">=");
+            comparison.add(from);
+            comparison.add("<");
+            comparison.add(to);
+            return add(attribute, "numeric", comparison);
+        }
+
+        public FilterPolicy build() {
+            if (conditions.isEmpty()) {
+                return MATCH_ALL;
+            }
+            JsonObject policy = new JsonObject();
+            for (Map.Entry<String, JsonArray> condition : conditions.entrySet()) {
+                policy.add(condition.getKey(), condition.getValue());
+            }
+            return new FilterPolicy(policy.toString());
+        }
+
+        private Builder add(String attribute, String operator, JsonElement operand) {
+            JsonObject condition = new JsonObject();
+            condition.add(operator, operand);
+            condition(attribute).add(condition);
+            return this;
+        }
+
+        private JsonArray condition(String attribute) {
+            return conditions.computeIfAbsent(attribute, key -> new JsonArray());
+        }
+    }
+}
@@ -13,37 +13,52 @@
  */
 package de.tschumacher.queueservice.sns;
 
-import com.amazonaws.auth.AWSStaticCredentialsProvider;
-import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.handlers.AsyncHandler;
-import com.amazonaws.regions.Regions;
 import com.amazonaws.services.sns.AmazonSNS;
 import com.amazonaws.services.sns.AmazonSNSAsync;
-import com.amazonaws.services.sns.AmazonSNSAsyncClientBuilder;
 import com.amazonaws.services.sns.model.CreateTopicRequest;
+import com.amazonaws.services.sns.model.NotFoundException;
 import com.amazonaws.services.sns.model.PublishRequest;
 import com.amazonaws.services.sns.model.PublishResult;
+import com.amazonaws.services.sns.model.SetSubscriptionAttributesRequest;
 import com.amazonaws.services.sns.model.SubscribeRequest;
+import de.tschumacher.queueservice.client.AwsClientFactory;
+import de.tschumacher.queueservice.message.MessageAttribute;
 import de.tschumacher.queueservice.message.SQSMessage;
+import de.tschumacher.queueservice.ratelimit.RateLimiter;
+import de.tschumacher.queueservice.resolution.ResolutionCache;
 import de.tschumacher.queueservice.sqs.SQSQueue;
+import java.util.Map;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class SNSQueue {
     private static final Logger logger = LoggerFactory.getLogger(SQSQueue.class);
-
     private final AmazonSNSAsync sns;
-    private final String topicArn;
+    private final ResolutionCache resolutionCache;
+    private final String clientScope;
+    private final String topicArnKey;
+    private final String subscriptionKeyPrefix;
+    private final Supplier<String> topicArnLoader;
     private final SNSQueueConfiguration configuration;
+    private final RateLimiter publishRateLimiter;
+    private final AsyncHandler<PublishRequest, PublishResult> publishHandler = new PublishHandler();
 
     public SNSQueue(final SNSQueueConfiguration configuration) {
-        this(createAmazonSQS(configuration), configuration);
+        this(createAmazonSNS(configuration), configuration);
     }
 
     public SNSQueue(final AmazonSNSAsync sns, final SNSQueueConfiguration configuration) {
         this.configuration = configuration;
         this.sns = sns;
-        this.topicArn = createTopic(sns, configuration);
+        this.publishRateLimiter = RateLimiter.create(configuration.getPublishRateLimit());
+        this.resolutionCache = ResolutionCache.forFile(configuration.getResolutionCacheFile());
+        this.clientScope = ResolutionCache.clientScope(configuration.getAccessKey(), configuration.getDefaultRegion());
+        this.topicArnKey = "topicArn:" + clientScope + "/" + configuration.getTopicName();
+        this.subscriptionKeyPrefix = "subscription:" + clientScope + "/" + configuration.getTopicName() + "|";
+        this.topicArnLoader = () -> createTopic(sns, configuration);
+        resolutionCache.resolve(sns, topicArnKey, topicArnLoader);
     }
 
     public static String createTopic(final AmazonSNS sns, final SNSQueueConfiguration configuration) {
@@ -58,55 +73,117 @@ public class SNSQueue {
         return sns.createTopic(createTopicRequest).getTopicArn();
     }
 
-    private static AmazonSNSAsync createAmazonSQS(final SNSQueueConfiguration configuration) {
-        BasicAWSCredentials credentials = new BasicAWSCredentials(
-            configuration.getAccessKey(),
-            configuration.getSecretKey()
-        );
-
-        return AmazonSNSAsyncClientBuilder
-            .standard()
-            .withCredentials(new AWSStaticCredentialsProvider(credentials))
-            .withRegion(Regions.fromName(configuration.getDefaultRegion()))
-            .build();
+    private static AmazonSNSAsync createAmazonSNS(final SNSQueueConfiguration configuration) {
+        return AwsClientFactory
+            .shared()
+            .sns(
+                configuration.getAccessKey(),
+                configuration.getSecretKey(),
+                configuration.getDefaultRegion(),
+                configuration.getClientSettings()
+            );
     }
 
     public void sendMessage(SQSMessage<?> sqsMessage) {
         PublishRequest publishRequest = new PublishRequest()
             .withMessage(sqsMessage.getPlainContent())
-            .withTopicArn(topicArn);
+            .withTopicArn(getTopicArn());
 
+        Map<String, MessageAttribute> messageAttributes = sqsMessage.getMessageAttributes();
+        if (messageAttributes != null && !messageAttributes.isEmpty()) {
+            publishRequest.withMessageAttributes(MessageAttribute.toSNSAttributes(messageAttributes));
+        }
         if (configuration.isFifo()) {
-            publishRequest.withMessageGroupId(sqsMessage.getMessageGroupId());
+            publishRequest
+                .withMessageGroupId(sqsMessage.getMessageGroupId())
+                .withMessageDeduplicationId(sqsMessage.getMessageDeduplicationId());
         }
 
-        sns.publishAsync(
-            publishRequest,
-            new AsyncHandler<PublishRequest, PublishResult>() {
-
-                @Override
-                public void onError(Exception e) {
-                    logger.error("SQS send message failed.", e);
-                }
+        publishRateLimiter.acquire(1);
+        sns.publishAsync(publishRequest, publishHandler);
+    }
 
-                @Override
-                public void onSuccess(PublishRequest request, PublishResult result) {
-                    logger.debug("SQS message sent successfully: {}", result.getMessageId());
-                }
-            }
+    /** Subscribes once per process, a subscription persisted by an earlier one may belong to a deleted topic. */
+    public String subscribeSQSQueue(String queueArn) {
+        String arn = getTopicArn();
+        return ResolutionCache.join(
+            resolutionCache.resolve(
+                sns,
+                subscriptionKeyPrefix + queueArn,
+                () -> {
+                    SubscribeRequest subscribeRequest = new SubscribeRequest()
+                        .withTopicArn(arn)
+                        .withEndpoint(queueArn)
+                        .withProtocol("sqs")
+                        .addAttributesEntry("RawMessageDelivery", "true");
+                    try {
+                        return sns.subscribe(subscribeRequest).getSubscriptionArn();
+                    } catch (final NotFoundException e) {
+                        topicMissing();
+                        throw e;
+                    }
+                },
+                false
+            )
         );
     }
 
-    public void subscribeSQSQueue(String queueArn) {
-        SubscribeRequest subscribeRequest = new SubscribeRequest()
-            .withTopicArn(topicArn)
-            .withEndpoint(queueArn)
-            .withProtocol("sqs")
-            .addAttributesEntry("RawMessageDelivery", "true");
-        sns.subscribe(subscribeRequest);
+    /**
+     * Subscribes the queue and applies the filter policy to the subscription. The policy is only written when it
+     * differs from the one applied last, a null policy means no filter and clears one applied before.
+     */
+    public String subscribeSQSQueue(String queueArn, FilterPolicy filterPolicy) {
+        String subscriptionArn = subscribeSQSQueue(queueArn);
+        applyFilterPolicy(subscriptionArn, filterPolicy != null ? filterPolicy : FilterPolicy.matchAll());
+        return subscriptionArn;
+    }
+
+    public void applyFilterPolicy(String subscriptionArn, FilterPolicy filterPolicy) {
+        String policy = filterPolicy.toJson();
+        boolean applied = resolutionCache.applyIfChanged(
+            sns,
+            "filterPolicy:" + subscriptionArn,
+            policy,
+            () ->
+                sns.setSubscriptionAttributes(
+                    new SetSubscriptionAttributesRequest()
+                        .withSubscriptionArn(subscriptionArn)
+                        .withAttributeName("FilterPolicy")
+                        .withAttributeValue(policy)
+                )
+        );
+        if (applied) {
+            logger.info("Applied filter policy {} to subscription {}", policy, subscriptionArn);
+        }
     }
 
     public String getTopicArn() {
-        return topicArn;
+        return ResolutionCache.join(resolutionCache.resolve(sns, topicArnKey, topicArnLoader));
+    }
+
+    /**
+     * Drops the cached arn once the topic turned out to be gone, the next access resolves or recreates it. A
+     * recreated topic has none of the subscriptions of the old one.
+     */
+    private void topicMissing() {
+        logger.warn("Topic {} does not exist, resolving its arn again", configuration.getTopicName());
+        resolutionCache.invalidate(sns, topicArnKey);
+        resolutionCache.invalidateAll(sns, subscriptionKeyPrefix);
+    }
+
+    private class PublishHandler implements AsyncHandler<PublishRequest, PublishResult> {
+
+        @Override
+        public void onError(Exception e) {
+            if (e instanceof NotFoundException) {
+                topicMissing();
+            }
+            logger.error("SQS send message failed.", e);
+        }
+
+        @Override
+        public void onSuccess(PublishRequest request, PublishResult result) {
+            logger.debug("SQS message sent successfully: {}", result.getMessageId());
+        }
     }
 }
@@ -14,6 +14,7 @@
 package de.tschumacher.queueservice.sns;
 
 import com.amazonaws.regions.Regions;
+import de.tschumacher.queueservice.client.AwsClientSettings;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NonNull;
@@ -33,6 +34,14 @@ public class SNSQueueConfiguration {
     @Builder.Default
     private String defaultRegion = Regions.EU_CENTRAL_1.getName();
 
+    @Builder.Default
+    private double publishRateLimit = 0;
+
+    private String resolutionCacheFile;
+
+    @Builder.Default
+    private AwsClientSettings clientSettings = AwsClientSettings.builder().build();
+
     public boolean isFifo() {
         return topicName.toLowerCase().endsWith(".fifo");
     }
@@ -17,8 +17,11 @@ import de.tschumacher.queueservice.AbstractMessageReceiverService;
 import de.tschumacher.queueservice.message.MessageHandler;
 import de.tschumacher.queueservice.message.SQSMessageFactory;
 import de.tschumacher.queueservice.MessageReceiver;
+import de.tschumacher.queueservice.resolution.ResolutionCache;
+import de.tschumacher.queueservice.sns.FilterPolicy;
 import de.tschumacher.queueservice.sns.SNSQueue;
 import de.tschumacher.queueservice.sqs.SQSQueue;
+import java.util.concurrent.CompletableFuture;
 
 public class SNSMessageReceiverService<F> extends AbstractMessageReceiverService<F> {
 
@@ -27,9 +30,30 @@ public class SNSMessageReceiverService<F> extends AbstractMessageReceiverService
         SQSQueue sqsQueue,
         MessageHandler<F> handler,
         SQSMessageFactory<F> factory
+    ) {
+        this(snsQueue, sqsQueue, handler, factory, null);
+    }
+
+    /**
+     * Only messages matching the filter policy are delivered to the queue, SNS drops the rest. A null policy removes
+     * a filter applied before.
+     */
+    public SNSMessageReceiverService(
+        SNSQueue snsQueue,
+        SQSQueue sqsQueue,
+        MessageHandler<F> handler,
+        SQSMessageFactory<F> factory,
+        FilterPolicy filterPolicy
     ) {
         super(sqsQueue, new MessageReceiver<>(handler, factory));
-        snsQueue.subscribeSQSQueue(sqsQueue.getQueueArn());
-        sqsQueue.enableSNS(snsQueue.getTopicArn());
+
+        CompletableFuture<String> subscription = sqsQueue
+            .getQueueArnAsync()
+            .thenApplyAsync(queueArn -> snsQueue.subscribeSQSQueue(queueArn, filterPolicy), ResolutionCache.executor());
+        CompletableFuture<Void> policy = CompletableFuture.runAsync(
+            () -> sqsQueue.enableSNS(snsQueue.getTopicArn()),
+            ResolutionCache.executor()
+        );
+        ResolutionCache.join(CompletableFuture.allOf(subscription, policy));
     }
 }
@@ -13,23 +13,38 @@
  */
 package de.tschumacher.queueservice.sns.distributor;
 
+import de.tschumacher.queueservice.message.DeduplicationIdGenerator;
+import de.tschumacher.queueservice.message.MessageAttribute;
 import de.tschumacher.queueservice.message.SQSMessage;
 import de.tschumacher.queueservice.message.SQSMessageFactory;
 import de.tschumacher.queueservice.sns.SNSQueue;
+import java.util.Collections;
+import java.util.Map;
 import lombok.AllArgsConstructor;
 
 @AllArgsConstructor
 public class SNSMessageDistributor<T> {
     private final SNSQueue snsQueue;
     private final SQSMessageFactory<T> factory;
+    private final DeduplicationIdGenerator<T> deduplicationIdGenerator;
+
+    public SNSMessageDistributor(final SNSQueue snsQueue, final SQSMessageFactory<T> factory) {
+        this(snsQueue, factory, null);
+    }
 
     public void distribute(final T message) {
         this.distribute(message, null);
     }
 
     public void distribute(final T message, String messageGroupId) {
+        distribute(message, messageGroupId, Collections.emptyMap());
+    }
+
+    public void distribute(final T message, String messageGroupId, Map<String, MessageAttribute> attributes) {
         SQSMessage<T> sqsMessage = this.factory.createSQSMessage(message);
         sqsMessage.setMessageGroupId(messageGroupId);
+        sqsMessage.setMessageAttributes(attributes);
+        DeduplicationIdGenerator.apply(deduplicationIdGenerator, sqsMessage);
 
         this.snsQueue.sendMessage(sqsMessage);
     }
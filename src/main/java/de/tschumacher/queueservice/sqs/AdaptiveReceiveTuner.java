@@ -0,0 +1,69 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.sqs;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adapts batch size, wait time and the number of active pollers to what the last receives returned. Full batches
+ * double the batch size up to 10 and shorten the wait; empty receives switch to the longest wait and halve the number
+ * of active pollers for every consecutive empty poll, down to one.
+ */
+public class AdaptiveReceiveTuner {
+    static final int MAX_BATCH_SIZE = 10;
+    private static final int MAX_IDLE_SHIFT = 16;
+
+    private final int minMaxNumberOfMessages;
+    private final int minWaitTimeSeconds;
+    private final int maxWaitTimeSeconds;
+    private final AtomicInteger maxNumberOfMessages;
+    private final AtomicInteger waitTimeSeconds;
+    private final AtomicInteger consecutiveEmptyPolls = new AtomicInteger();
+
+    public AdaptiveReceiveTuner(int minMaxNumberOfMessages, int minWaitTimeSeconds, int maxWaitTimeSeconds) {
+        this.minMaxNumberOfMessages = Math.max(1, Math.min(MAX_BATCH_SIZE, minMaxNumberOfMessages));
+        this.minWaitTimeSeconds = Math.min(minWaitTimeSeconds, maxWaitTimeSeconds);
+        this.maxWaitTimeSeconds = maxWaitTimeSeconds;
+        this.maxNumberOfMessages = new AtomicInteger(this.minMaxNumberOfMessages);
+        this.waitTimeSeconds = new AtomicInteger(maxWaitTimeSeconds);
+    }
+
+    public int getMaxNumberOfMessages() {
+        return maxNumberOfMessages.get();
+    }
+
+    public int getWaitTimeSeconds() {
+        return waitTimeSeconds.get();
+    }
+
+    public void record(int requested, int received) {
+        if (received == 0) {
+            consecutiveEmptyPolls.incrementAndGet();
+            waitTimeSeconds.set(maxWaitTimeSeconds);
+            maxNumberOfMessages.set(minMaxNumberOfMessages);
+            return;
+        }
+
+        consecutiveEmptyPolls.set(0);
+        if (received >= requested) {
+            maxNumberOfMessages.set(Math.min(MAX_BATCH_SIZE, requested * 2));
+            waitTimeSeconds.set(minWaitTimeSeconds);
+        }
+    }
+
+    public int getActivePollers(int pollerCount) {
+        int shift = Math.min(consecutiveEmptyPolls.get(), MAX_IDLE_SHIFT);
+        return Math.max(1, pollerCount >> shift);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.sqs;
+
+import com.amazonaws.services.sqs.model.Message;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits a received batch into the runs that have to be handled sequentially. Messages sharing a MessageGroupId end
+ * up in one group in receive order, every message without a group id forms a group of its own.
+ */
+public final class MessageGroups {
+    private static final String MESSAGE_GROUP_ID = "MessageGroupId";
+
+    private MessageGroups() {}
+
+    public static List<List<Message>> split(List<Message> messages) {
+        List<List<Message>> groups = new ArrayList<>(messages.size());
+        Map<String, List<Message>> byGroupId = new LinkedHashMap<>();
+        for (Message message : messages) {
+            String groupId = message.getAttributes() == null ? null : message.getAttributes().get(MESSAGE_GROUP_ID);
+            if (groupId == null) {
+                groups.add(Collections.singletonList(message));
+            } else {
+                List<Message> group = byGroupId.get(groupId);
+                if (group == null) {
+                    group = new ArrayList<>();
+                    byGroupId.put(groupId, group);
+                    groups.add(group);
+                }
+                group.add(message);
+            }
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.sqs;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class QueueDepth {
+    private long timestamp;
+    private long visible;
+    private long notVisible;
+    private long delayed;
+    private double drainRatePerSecond;
+    private double estimatedDrainSeconds;
+
+    public long getBacklog() {
+        return visible + delayed;
+    }
+}
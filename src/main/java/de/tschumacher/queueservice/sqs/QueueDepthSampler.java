@@ -0,0 +1,47 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.sqs;
+
+import de.tschumacher.queueservice.timer.HashedWheelTimer;
+import de.tschumacher.queueservice.timer.Timeout;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Samples queue depth for any number of queues on the shared timer. Every sample is one GetQueueAttributes call per
+ * queue.
+ */
+public class QueueDepthSampler {
+    private static final Logger logger = LoggerFactory.getLogger(QueueDepthSampler.class);
+    private static final QueueDepthSampler SHARED = new QueueDepthSampler();
+
+    private final HashedWheelTimer timer = HashedWheelTimer.shared();
+
+    public static QueueDepthSampler shared() {
+        return SHARED;
+    }
+
+    public Timeout schedule(SQSQueue queue, long interval, TimeUnit unit) {
+        return timer.scheduleWithFixedDelay(() -> sample(queue), 0, interval, unit);
+    }
+
+    private static void sample(SQSQueue queue) {
+        try {
+            queue.sampleQueueDepth();
+        } catch (final Throwable e) {
+            logger.warn("Sampling queue depth failed", e);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.sqs;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryUtils;
+import de.tschumacher.queueservice.metrics.QueueMetrics;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Backoff for failing receives, shared by all pollers of a queue. Every error delays the failing poller exponentially
+ * with jitter, based on the number of consecutive errors. Throttling additionally starts a cooldown that every poller
+ * honors before its next receive, and authentication errors back off the maximum right away.
+ */
+public class ReceiveBackoff {
+    private static final long INITIAL_DELAY_MILLIS = 200;
+    private static final long MAX_DELAY_MILLIS = 30_000;
+    private static final Set<String> AUTHENTICATION_ERROR_CODES = new HashSet<>(
+        Arrays.asList(
+            "AccessDenied",
+            "AccessDeniedException",
+            "ExpiredToken",
+            "IncompleteSignature",
+            "InvalidClientTokenId",
+            "MissingAuthenticationToken",
+            "SignatureDoesNotMatch",
+            "UnrecognizedClientException"
+        )
+    );
+
+    private final QueueMetrics metrics;
+    private final LongSupplier clock;
+    private final AtomicInteger consecutiveErrors = new AtomicInteger();
+    private final AtomicLong cooldownUntil;
+
+    public ReceiveBackoff(QueueMetrics metrics) {
+        this(metrics, System::nanoTime);
+    }
+
+    ReceiveBackoff(QueueMetrics metrics, LongSupplier clock) {
+        this.metrics = metrics;
+        this.clock = clock;
+        this.cooldownUntil = new AtomicLong(clock.getAsLong());
+    }
+
+    /** Records a failed receive and returns how long the failing poller should wait before trying again. */
+    public long onError(Throwable e) {
+        ReceiveErrorType type = classify(e);
+        metrics.receiveFailed(type);
+
+        int errors = consecutiveErrors.incrementAndGet();
+        long delay = type == ReceiveErrorType.AUTHENTICATION ? MAX_DELAY_MILLIS : delayMillis(errors);
+        if (type == ReceiveErrorType.THROTTLING) {
+            long until = clock.getAsLong() + TimeUnit.MILLISECONDS.toNanos(delay);
+            cooldownUntil.accumulateAndGet(until, (current, next) -> next - current > 0 ? next : current);
+        }
+        return delay;
+    }
+
+    public void onSuccess() {
+        if (consecutiveErrors.get() != 0) {
+            consecutiveErrors.set(0);
+        }
+    }
+
+    /** Remaining throttling cooldown every poller has to wait before receiving, 0 if there is none. */
+    public long getCooldownMillis() {
+        long remaining = cooldownUntil.get() - clock.getAsLong();
+        return remaining > 0 ? TimeUnit.NANOSECONDS.toMillis(remaining) + 1 : 0;
+    }
+
+    public int getConsecutiveErrors() {
+        return consecutiveErrors.get();
+    }
+
+    static long delayMillis(int consecutiveErrors) {
+        long delay = INITIAL_DELAY_MILLIS << Math.min(consecutiveErrors - 1, 20);
+        delay = Math.min(delay, MAX_DELAY_MILLIS);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    public static ReceiveErrorType classify(Throwable e) {
+        Throwable error = e;
+        while (isWrapper(error) && error.getCause() != null) {
+            error = error.getCause();
+        }
+
+        if (error instanceof AmazonServiceException) {
+            AmazonServiceException serviceException = (AmazonServiceException) error;
+            if (RetryUtils.isThrottlingException(serviceException) || serviceException.getStatusCode() == 429) {
+                return ReceiveErrorType.THROTTLING;
+            }
+            if (
+                AUTHENTICATION_ERROR_CODES.contains(serviceException.getErrorCode()) ||
+                serviceException.getStatusCode() == 401 ||
+                serviceException.getStatusCode() == 403
+            ) {
+                return ReceiveErrorType.AUTHENTICATION;
+            }
+            boolean client =
+                serviceException.getErrorType() == AmazonServiceException.ErrorType.Client ||
+                serviceException.getStatusCode() / 100 == 4;
+            return client ? ReceiveErrorType.CLIENT : ReceiveErrorType.SERVICE;
+        }
+        if (error instanceof AmazonClientException) {
+            return ReceiveErrorType.NETWORK;
+        }
+        return ReceiveErrorType.OTHER;
+    }
+
+    private static boolean isWrapper(Throwable e) {
+        return e instanceof CompletionException || e instanceof ExecutionException;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.sqs;
+
+import com.amazonaws.services.sqs.model.Message;
+import de.tschumacher.queueservice.message.MessageAcknowledgement;
+import de.tschumacher.queueservice.message.SQSMessage;
+import de.tschumacher.queueservice.message.SQSMessageFactory;
+import de.tschumacher.queueservice.resolution.ResolutionCache;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pull-based consumer for draining a queue. While the current batch is consumed the next one is already being
+ * received. Acknowledgements are collected and deleted in batches of ten as the iterator advances. Not thread-safe,
+ * like any iterator.
+ */
+public class SQSMessageIterator<T> implements Iterator<SQSMessage<T>>, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SQSMessageIterator.class);
+    private static final int ACK_BATCH_SIZE = 10;
+
+    private final SQSQueue queue;
+    private final SQSMessageFactory<T> factory;
+    private final long idleTimeoutNanos;
+    private final Deque<Message> buffer = new ArrayDeque<>();
+    private final List<String> pendingAcks = new ArrayList<>();
+    private CompletableFuture<List<Message>> readAhead;
+    private SQSMessage<T> next;
+    private DeferredAcknowledgement current;
+    private long lastReceivedAt;
+    private boolean closed;
+
+    SQSMessageIterator(SQSQueue queue, SQSMessageFactory<T> factory, long idleTimeoutNanos) {
+        this.queue = queue;
+        this.factory = factory;
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        this.lastReceivedAt = System.nanoTime();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && !closed) {
+            Message message = buffer.poll();
+            if (message != null) {
+                next = createMessage(message);
+            } else if (!fill()) {
+                // Asking for more after the last message means it was handled, same as moving on with next().
+                settleCurrent();
+                close();
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public SQSMessage<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        settleCurrent();
+        SQSMessage<T> message = next;
+        next = null;
+        current = (DeferredAcknowledgement) message.getAcknowledgement();
+        return message;
+    }
+
+    /**
+     * Flushes pending acks and releases everything not handled yet: the message handed out last unless the caller
+     * settled it, and everything read ahead, including a batch still being received. Closing on an exception thus
+     * redelivers the message that was being handled.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flushAcks();
+
+        List<String> unconsumed = new ArrayList<>();
+        if (current != null) {
+            if (!current.settled) {
+                unconsumed.add(current.receiptHandle);
+            }
+            current = null;
+        }
+        if (next != null) {
+            unconsumed.add(next.getReceiptHandle());
+            next = null;
+        }
+        for (Message message : buffer) {
+            unconsumed.add(message.getReceiptHandle());
+        }
+        buffer.clear();
+        release(unconsumed);
+
+        if (readAhead != null) {
+            readAhead.thenAccept(this::releaseMessages);
+            readAhead = null;
+        }
+    }
+
+    private void releaseMessages(List<Message> messages) {
+        List<String> receiptHandles = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            receiptHandles.add(message.getReceiptHandle());
+        }
+        release(receiptHandles);
+    }
+
+    private void release(List<String> receiptHandles) {
+        if (!receiptHandles.isEmpty()) {
+            queue.releaseMessages(receiptHandles);
+        }
+    }
+
+    /** Waits for the batch read ahead and starts the next one. Returns false once the queue stayed idle too long. */
+    private boolean fill() {
+        while (buffer.isEmpty()) {
+            if (readAhead == null) {
+                readAhead = queue.receiveBatchAsync();
+            }
+
+            List<Message> messages = ResolutionCache.join(readAhead);
+            readAhead = null;
+            if (messages.isEmpty()) {
+                if (System.nanoTime() - lastReceivedAt >= idleTimeoutNanos) {
+                    return false;
+                }
+            } else {
+                lastReceivedAt = System.nanoTime();
+                buffer.addAll(messages);
+                readAhead = queue.receiveBatchAsync();
+            }
+        }
+        return true;
+    }
+
+    private SQSMessage<T> createMessage(Message message) {
+        try {
+            SQSMessage<T> sqsMessage = factory.createSQSMessage(message);
+            sqsMessage.setAcknowledgement(new DeferredAcknowledgement(this, message.getReceiptHandle()));
+            return sqsMessage;
+        } catch (final Throwable e) {
+            logger.error("Decoding message failed for ID {}: {}", message.getMessageId(), e.getMessage(), e);
+            queue.retryMessage(message.getReceiptHandle());
+            return null;
+        }
+    }
+
+    private void settleCurrent() {
+        if (current != null) {
+            current.ack();
+            current = null;
+        }
+    }
+
+    private void flushAcks() {
+        if (!pendingAcks.isEmpty()) {
+            queue.deleteMessages(new ArrayList<>(pendingAcks));
+            pendingAcks.clear();
+        }
+    }
+
+    /** Static, so the message's acknowledgement can be cast back without an unchecked cast. */
+    private static class DeferredAcknowledgement implements MessageAcknowledgement {
+        private final SQSMessageIterator<?> iterator;
+        private final String receiptHandle;
+        private boolean settled;
+
+        DeferredAcknowledgement(SQSMessageIterator<?> iterator, String receiptHandle) {
+            this.iterator = iterator;
+            this.receiptHandle = receiptHandle;
+        }
+
+        @Override
+        public void ack() {
+            if (!settled) {
+                settled = true;
+                iterator.pendingAcks.add(receiptHandle);
+                if (iterator.pendingAcks.size() >= ACK_BATCH_SIZE) {
+                    iterator.flushAcks();
+                }
+            }
+        }
+
+        @Override
+        public void nack() {
+            if (!settled) {
+                settled = true;
+                iterator.queue.retryMessage(receiptHandle);
+            }
+        }
+    }
+}
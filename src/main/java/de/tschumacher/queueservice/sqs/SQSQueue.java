@@ -13,8 +13,6 @@
  */
 package de.tschumacher.queueservice.sqs;
 
-import com.amazonaws.auth.AWSStaticCredentialsProvider;
-import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.auth.policy.actions.SQSActions;
 import com.amazonaws.auth.policy.conditions.ArnCondition;
 import com.amazonaws.auth.policy.conditions.ArnCondition.ArnComparisonType;
@@ -24,21 +22,67 @@ import com.amazonaws.auth.policy.Principal;
 import com.amazonaws.auth.policy.Resource;
 import com.amazonaws.auth.policy.Statement;
 import com.amazonaws.handlers.AsyncHandler;
-import com.amazonaws.regions.Regions;
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.AmazonSQSAsync;
-import com.amazonaws.services.sqs.AmazonSQSAsyncClientBuilder;
 import com.amazonaws.services.sqs.model.*;
+import de.tschumacher.queueservice.client.AwsClientFactory;
+import de.tschumacher.queueservice.message.MessageAttribute;
 import de.tschumacher.queueservice.message.SQSMessage;
+import de.tschumacher.queueservice.message.SQSMessageFactory;
+import de.tschumacher.queueservice.metrics.QueueMetrics;
+import de.tschumacher.queueservice.ratelimit.RateLimiter;
+import de.tschumacher.queueservice.resolution.ResolutionCache;
+import de.tschumacher.queueservice.timer.Timeout;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class SQSQueue {
+    /** Epoch millis at which a message delayed beyond the SQS limit becomes due. */
+    /** Reserved for long delays, prefixed so it cannot clash with attributes of the application. */
+    public static final String DELIVER_AT = "queueservice.DeliverAt";
+
     private static final Logger logger = LoggerFactory.getLogger(SQSQueue.class);
+    private static final int MAX_BATCH_SIZE = 10;
+    private static final int MAX_DELAY_SECONDS = 900;
+    private static final int MAX_MESSAGE_ATTRIBUTES = 10;
+    private static final String VISIBLE = "ApproximateNumberOfMessages";
+    private static final String NOT_VISIBLE = "ApproximateNumberOfMessagesNotVisible";
+    private static final String DELAYED = "ApproximateNumberOfMessagesDelayed";
+    private static final String SENT_TIMESTAMP = "SentTimestamp";
+    private static final String FIRST_RECEIVE_TIMESTAMP = "ApproximateFirstReceiveTimestamp";
+    private static final String ALL_MESSAGE_ATTRIBUTES = "All";
+    private static final String[] RECEIVE_ATTRIBUTE_NAMES = {
+        SENT_TIMESTAMP,
+        FIRST_RECEIVE_TIMESTAMP,
+        "ApproximateReceiveCount",
+        "MessageGroupId",
+    };
+
     private final SQSQueueConfiguration configuration;
     private final AmazonSQSAsync sqs;
-    private final String queueUrl;
+    private final ResolutionCache resolutionCache;
+    private final String clientScope;
+    private final String queueUrlKey;
+    private final String policyKey;
+    private final Supplier<String> queueUrlLoader;
+    private final RateLimiter sendRateLimiter;
+    private final RateLimiter receiveRateLimiter;
+    private final AdaptiveReceiveTuner receiveTuner;
+    private final QueueMetrics metrics = new QueueMetrics();
+    private final ReceiveBackoff receiveBackoff = new ReceiveBackoff(metrics);
+    private final List<QueueDepthListener> queueDepthListeners = new CopyOnWriteArrayList<>();
+    private volatile Timeout depthSampling;
+    private volatile boolean samplingStopped;
+    private final AtomicReferenceArray<ReceiveMessageRequest> receiveRequests;
+    private final AsyncHandler<SendMessageRequest, SendMessageResult> sendHandler = new SendHandler();
 
     public SQSQueue(final SQSQueueConfiguration configuration) {
         this(configuration, createAmazonSQS(configuration));
@@ -47,20 +91,35 @@ public class SQSQueue {
     public SQSQueue(final SQSQueueConfiguration configuration, final AmazonSQSAsync sqs) {
         this.configuration = configuration;
         this.sqs = sqs;
-        queueUrl = getOrCreateQueue(sqs, configuration);
+        this.sendRateLimiter = RateLimiter.create(configuration.getSendRateLimit());
+        this.receiveRateLimiter = RateLimiter.create(configuration.getReceiveRateLimit());
+        this.receiveTuner =
+            configuration.isAdaptiveReceive()
+                ? new AdaptiveReceiveTuner(
+                    configuration.getMaxNumberOfMessages(),
+                    configuration.getMinWaitTimeSeconds(),
+                    configuration.getWaitTimeSeconds()
+                )
+                : null;
+        this.receiveRequests =
+            new AtomicReferenceArray<>((configuration.getWaitTimeSeconds() + 1) * (MAX_BATCH_SIZE + 1));
+        this.resolutionCache = ResolutionCache.forFile(configuration.getResolutionCacheFile());
+        this.clientScope = ResolutionCache.clientScope(configuration.getAccessKey(), configuration.getDefaultRegion());
+        this.queueUrlKey = "queueUrl:" + clientScope + "/" + configuration.getQueueName();
+        this.policyKey = "policy:" + clientScope + "/" + configuration.getQueueName();
+        this.queueUrlLoader = () -> getOrCreateQueue(sqs, configuration);
+        resolutionCache.resolve(sqs, queueUrlKey, queueUrlLoader);
     }
 
     private static AmazonSQSAsync createAmazonSQS(final SQSQueueConfiguration configuration) {
-        final BasicAWSCredentials credentials = new BasicAWSCredentials(
-            configuration.getAccessKey(),
-            configuration.getSecretKey()
-        );
-
-        return AmazonSQSAsyncClientBuilder
-            .standard()
-            .withCredentials(new AWSStaticCredentialsProvider(credentials))
-            .withRegion(Regions.fromName(configuration.getDefaultRegion()))
-            .build();
+        return AwsClientFactory
+            .shared()
+            .sqs(
+                configuration.getAccessKey(),
+                configuration.getSecretKey(),
+                configuration.getDefaultRegion(),
+                configuration.getClientSettings()
+            );
     }
 
     private static String getOrCreateQueue(final AmazonSQS sqs, final SQSQueueConfiguration configuration) {
@@ -82,37 +141,200 @@ public class SQSQueue {
         return queueUrl;
     }
 
-    public synchronized List<Message> receiveMessages() {
-        ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(queueUrl)
-            .withWaitTimeSeconds(configuration.getWaitTimeSeconds())
-            .withMaxNumberOfMessages(configuration.getMaxNumberOfMessages())
-            .withVisibilityTimeout(configuration.getVisibilityTimeout());
+    public List<Message> receiveMessages() {
+        return receiveMessages(createReceiveMessageRequest());
+    }
 
-        return sqs.receiveMessage(receiveMessageRequest).getMessages();
+    /** Long-polls for at most the given time, 0 returns right away. For topping up a batch within a time window. */
+    public List<Message> receiveMessages(int maxWaitTimeSeconds) {
+        ReceiveMessageRequest receiveMessageRequest = createReceiveMessageRequest();
+        if (maxWaitTimeSeconds < receiveMessageRequest.getWaitTimeSeconds()) {
+            receiveMessageRequest =
+                getReceiveMessageRequest(
+                    Math.max(0, maxWaitTimeSeconds),
+                    receiveMessageRequest.getMaxNumberOfMessages()
+                );
+        }
+        return receiveMessages(receiveMessageRequest);
     }
 
-    public void deleteMessage(final String receiptHandle) {
-        sqs.deleteMessage(new DeleteMessageRequest().withQueueUrl(queueUrl).withReceiptHandle(receiptHandle));
+    private List<Message> receiveMessages(ReceiveMessageRequest receiveMessageRequest) {
+        startSampling();
+        receiveRateLimiter.acquire(1);
+        long start = System.nanoTime();
+        List<Message> messages;
+        try {
+            messages = sqs.receiveMessage(receiveMessageRequest).getMessages();
+        } catch (final QueueDoesNotExistException e) {
+            queueMissing();
+            throw e;
+        }
+        metrics.getReceiveTime().recordSince(start);
+        return received(receiveMessageRequest, messages);
     }
 
-    public void retryMessage(final String receiptHandle) {
-        ChangeMessageVisibilityRequest changeMessageVisibilityRequest = new ChangeMessageVisibilityRequest()
-            .withQueueUrl(queueUrl)
-            .withVisibilityTimeout(configuration.getRetrySeconds())
-            .withReceiptHandle(receiptHandle);
+    public CompletableFuture<List<Message>> receiveMessagesAsync() {
+        return receiveMessagesAsync(Integer.MAX_VALUE);
+    }
 
-        sqs.changeMessageVisibility(changeMessageVisibilityRequest);
+    /** Receives at most {@code maxNumberOfMessages}, or fewer if the queue is configured for smaller batches. */
+    public CompletableFuture<List<Message>> receiveMessagesAsync(int maxNumberOfMessages) {
+        return receiveMessagesAsync(createReceiveMessageRequest(maxNumberOfMessages));
     }
 
-    public void sendMessage(final SQSMessage<?> sqsMessage) {
-        SendMessageRequest sendMessageRequest = new SendMessageRequest()
-            .withQueueUrl(queueUrl)
-            .withMessageBody(sqsMessage.getPlainContent())
-            .withDelaySeconds(sqsMessage.getDelay());
+    /** Receives a full batch regardless of the configured batch size, for consumers that read ahead. */
+    CompletableFuture<List<Message>> receiveBatchAsync() {
+        return receiveMessagesAsync(getReceiveMessageRequest(configuration.getWaitTimeSeconds(), MAX_BATCH_SIZE));
+    }
+
+    private CompletableFuture<List<Message>> receiveMessagesAsync(ReceiveMessageRequest receiveMessageRequest) {
+        startSampling();
+        CompletableFuture<List<Message>> future = new CompletableFuture<>();
+        receiveRateLimiter.acquire(1);
+        long start = System.nanoTime();
+        sqs.receiveMessageAsync(
+            receiveMessageRequest,
+            new AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult>() {
+
+                @Override
+                public void onError(Exception e) {
+                    if (e instanceof QueueDoesNotExistException) {
+                        queueMissing();
+                    }
+                    future.completeExceptionally(e);
+                }
+
+                @Override
+                public void onSuccess(ReceiveMessageRequest request, ReceiveMessageResult result) {
+                    metrics.getReceiveTime().recordSince(start);
+                    future.complete(received(request, result.getMessages()));
+                }
+            }
+        );
+        return future;
+    }
+
+    public int getActivePollers(int pollerCount) {
+        return receiveTuner != null ? receiveTuner.getActivePollers(pollerCount) : pollerCount;
+    }
+
+    private ReceiveMessageRequest createReceiveMessageRequest() {
+        return createReceiveMessageRequest(Integer.MAX_VALUE);
+    }
+
+    private ReceiveMessageRequest createReceiveMessageRequest(int limit) {
+        if (receiveTuner != null) {
+            return getReceiveMessageRequest(
+                receiveTuner.getWaitTimeSeconds(),
+                Math.min(limit, receiveTuner.getMaxNumberOfMessages())
+            );
+        }
+        return getReceiveMessageRequest(
+            configuration.getWaitTimeSeconds(),
+            Math.min(limit, configuration.getMaxNumberOfMessages())
+        );
+    }
+
+    /**
+     * Receive requests only differ in wait time and batch size, so one template per combination is built once and
+     * reused for every poll. Templates are never modified after creation, a template for a url that was resolved
+     * again is replaced.
+     */
+    private ReceiveMessageRequest getReceiveMessageRequest(int waitTimeSeconds, int maxNumberOfMessages) {
+        String url = getQueueUrl();
+        if (maxNumberOfMessages > MAX_BATCH_SIZE || waitTimeSeconds > configuration.getWaitTimeSeconds()) {
+            return newReceiveMessageRequest(url, waitTimeSeconds, maxNumberOfMessages);
+        }
+
+        int index = waitTimeSeconds * (MAX_BATCH_SIZE + 1) + maxNumberOfMessages;
+        ReceiveMessageRequest request = receiveRequests.get(index);
+        if (request == null || !url.equals(request.getQueueUrl())) {
+            request = newReceiveMessageRequest(url, waitTimeSeconds, maxNumberOfMessages);
+            receiveRequests.set(index, request);
+        }
+        return request;
+    }
+
+    private ReceiveMessageRequest newReceiveMessageRequest(String url, int waitTimeSeconds, int maxNumberOfMessages) {
+        return new ReceiveMessageRequest(url)
+            .withWaitTimeSeconds(waitTimeSeconds)
+            .withMaxNumberOfMessages(maxNumberOfMessages)
+            .withVisibilityTimeout(configuration.getVisibilityTimeout())
+            .withAttributeNames(RECEIVE_ATTRIBUTE_NAMES)
+            .withMessageAttributeNames(ALL_MESSAGE_ATTRIBUTES);
+    }
+
+    private List<Message> received(ReceiveMessageRequest request, List<Message> received) {
+        receiveBackoff.onSuccess();
+        if (received.size() > 1) {
+            receiveRateLimiter.charge(received.size() - 1);
+        }
+        if (receiveTuner != null) {
+            receiveTuner.record(request.getMaxNumberOfMessages(), received.size());
+        }
+
+        long now = System.currentTimeMillis();
+        List<Message> messages = deferMessagesNotDue(received, now);
+        for (Message message : messages) {
+            Map<String, String> attributes = message.getAttributes();
+            metrics.messageReceived(
+                now,
+                parseTimestamp(attributes.get(SENT_TIMESTAMP)),
+                parseTimestamp(attributes.get(FIRST_RECEIVE_TIMESTAMP))
+            );
+        }
+        return messages;
+    }
 
+    /**
+     * Delays beyond the SQS limit hop through the queue: a message whose {@link #DELIVER_AT} lies in the future is sent
+     * again with the remaining delay, at most 15 minutes, and deleted once the copy was accepted. Consumers only see
+     * messages that are due. FIFO queues never carry long delays, see {@link #getSendDelay}.
+     */
+    private List<Message> deferMessagesNotDue(List<Message> messages, long now) {
         if (configuration.isFifo()) {
-            sendMessageRequest.withMessageGroupId(sqsMessage.getMessageGroupId());
+            return messages;
+        }
+        List<Message> due = messages;
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            long deliverAt = getDeliverAt(message);
+            if (deliverAt > now) {
+                if (due == messages) {
+                    due = new ArrayList<>(messages.subList(0, i));
+                }
+                reenqueue(message, deliverAt - now);
+            } else if (due != messages) {
+                due.add(message);
+            }
+        }
+        return due;
+    }
+
+    /** Messages without a readable delivery time are due, a broken attribute must not keep them from consumers. */
+    private static long getDeliverAt(Message message) {
+        if (message.getMessageAttributes().isEmpty()) {
+            return 0;
+        }
+        MessageAttributeValue deliverAt = message.getMessageAttributes().get(DELIVER_AT);
+        if (deliverAt == null) {
+            return 0;
         }
+        try {
+            return Long.parseLong(deliverAt.getStringValue());
+        } catch (final NumberFormatException e) {
+            logger.warn("Ignoring unreadable {} of message {}", DELIVER_AT, message.getMessageId());
+            return 0;
+        }
+    }
+
+    private void reenqueue(Message message, long remainingMillis) {
+        int delaySeconds = (int) Math.min(MAX_DELAY_SECONDS, (remainingMillis + 999) / 1000);
+        SendMessageRequest sendMessageRequest = new SendMessageRequest()
+            .withQueueUrl(getQueueUrl())
+            .withMessageBody(message.getBody())
+            .withDelaySeconds(delaySeconds)
+            .withMessageAttributes(message.getMessageAttributes());
 
         sqs.sendMessageAsync(
             sendMessageRequest,
@@ -120,38 +342,387 @@ public class SQSQueue {
 
                 @Override
                 public void onError(Exception e) {
-                    logger.error("SQS send message failed.", e);
+                    logger.warn("Deferring message {} failed, it will be redelivered", message.getMessageId(), e);
                 }
 
                 @Override
                 public void onSuccess(SendMessageRequest request, SendMessageResult result) {
-                    logger.debug("SQS message sent successfully: {}", result.getMessageId());
+                    deleteMessage(message.getReceiptHandle());
                 }
             }
         );
     }
 
-    public String getQueueArn() {
+    public void deleteMessage(final String receiptHandle) {
+        long start = System.nanoTime();
+        sqs.deleteMessage(new DeleteMessageRequest().withQueueUrl(getQueueUrl()).withReceiptHandle(receiptHandle));
+        metrics.getAckTime().recordSince(start);
+        metrics.messagesDeleted(1);
+    }
+
+    public void deleteMessages(final List<String> receiptHandles) {
+        for (int from = 0; from < receiptHandles.size(); from += MAX_BATCH_SIZE) {
+            List<String> batch = receiptHandles.subList(from, Math.min(from + MAX_BATCH_SIZE, receiptHandles.size()));
+            List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                entries.add(
+                    new DeleteMessageBatchRequestEntry().withId(Integer.toString(i)).withReceiptHandle(batch.get(i))
+                );
+            }
+
+            long start = System.nanoTime();
+            DeleteMessageBatchResult result = sqs.deleteMessageBatch(
+                new DeleteMessageBatchRequest().withQueueUrl(getQueueUrl()).withEntries(entries)
+            );
+            metrics.getAckTime().recordSince(start);
+            metrics.messagesDeleted(result.getSuccessful().size());
+            for (BatchResultErrorEntry failed : result.getFailed()) {
+                logger.warn("Deleting message failed: {} {}", failed.getCode(), failed.getMessage());
+            }
+        }
+    }
+
+    public void retryMessage(final String receiptHandle) {
+        ChangeMessageVisibilityRequest changeMessageVisibilityRequest = new ChangeMessageVisibilityRequest()
+            .withQueueUrl(getQueueUrl())
+            .withVisibilityTimeout(configuration.getRetrySeconds())
+            .withReceiptHandle(receiptHandle);
+
+        sqs.changeMessageVisibility(changeMessageVisibilityRequest);
+    }
+
+    public void releaseMessages(final List<String> receiptHandles) {
+        changeMessageVisibility(receiptHandles, 0);
+    }
+
+    /** Batch variant of {@link #retryMessage}. */
+    public void retryMessages(final List<String> receiptHandles) {
+        changeMessageVisibility(receiptHandles, configuration.getRetrySeconds());
+    }
+
+    private void changeMessageVisibility(final List<String> receiptHandles, int visibilityTimeout) {
+        for (int from = 0; from < receiptHandles.size(); from += MAX_BATCH_SIZE) {
+            List<String> batch = receiptHandles.subList(from, Math.min(from + MAX_BATCH_SIZE, receiptHandles.size()));
+            List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                entries.add(
+                    new ChangeMessageVisibilityBatchRequestEntry()
+                        .withId(Integer.toString(i))
+                        .withReceiptHandle(batch.get(i))
+                        .withVisibilityTimeout(visibilityTimeout)
+                );
+            }
+
+            ChangeMessageVisibilityBatchResult result = sqs.changeMessageVisibilityBatch(
+                new ChangeMessageVisibilityBatchRequest().withQueueUrl(getQueueUrl()).withEntries(entries)
+            );
+            for (BatchResultErrorEntry failed : result.getFailed()) {
+                logger.warn("Changing message visibility failed: {} {}", failed.getCode(), failed.getMessage());
+            }
+        }
+    }
+
+    public void sendMessage(final SQSMessage<?> sqsMessage) {
+        TimedSendMessageRequest sendMessageRequest = new TimedSendMessageRequest();
+        sendMessageRequest
+            .withQueueUrl(getQueueUrl())
+            .withMessageBody(sqsMessage.getPlainContent())
+            .withDelaySeconds(getSendDelay(sqsMessage))
+            .withMessageAttributes(createMessageAttributes(sqsMessage));
+
+        if (configuration.isFifo()) {
+            sendMessageRequest
+                .withMessageGroupId(sqsMessage.getMessageGroupId())
+                .withMessageDeduplicationId(sqsMessage.getMessageDeduplicationId());
+        }
+
+        sendRateLimiter.acquire(1);
+        sendMessageRequest.started();
+        sqs.sendMessageAsync(sendMessageRequest, sendHandler);
+    }
+
+    private static boolean isLongDelay(SQSMessage<?> sqsMessage) {
+        return sqsMessage.getDelay() != null && sqsMessage.getDelay() > MAX_DELAY_SECONDS;
+    }
+
+    /**
+     * Long delays are re-sent without their group and deduplication id, which FIFO queues would reject or reorder,
+     * so they are refused before anything is sent.
+     */
+    private Integer getSendDelay(SQSMessage<?> sqsMessage) {
+        if (isLongDelay(sqsMessage)) {
+            if (configuration.isFifo()) {
+                throw new IllegalArgumentException("delay of FIFO messages must be at most " + MAX_DELAY_SECONDS + "s");
+            }
+            return MAX_DELAY_SECONDS;
+        }
+        return sqsMessage.getDelay();
+    }
+
+    /**
+     * Returns null for messages without attributes, so the common case allocates nothing. Long delays need one of the
+     * ten attributes SQS allows, so they are refused when the message already uses all of them.
+     */
+    private static Map<String, MessageAttributeValue> createMessageAttributes(SQSMessage<?> sqsMessage) {
+        Map<String, MessageAttribute> messageAttributes = sqsMessage.getMessageAttributes();
+        boolean hasAttributes = messageAttributes != null && !messageAttributes.isEmpty();
+        if (!isLongDelay(sqsMessage)) {
+            return hasAttributes ? MessageAttribute.toSQSAttributes(messageAttributes) : null;
+        }
+        if (hasAttributes && messageAttributes.size() >= MAX_MESSAGE_ATTRIBUTES) {
+            throw new IllegalArgumentException(
+                "delays over " + MAX_DELAY_SECONDS + "s need a free message attribute, at most " +
+                (MAX_MESSAGE_ATTRIBUTES - 1) +
+                " are allowed"
+            );
+        }
+
+        Map<String, MessageAttributeValue> attributes = hasAttributes
+            ? MessageAttribute.toSQSAttributes(messageAttributes)
+            : new LinkedHashMap<>(2);
+        long deliverAt = System.currentTimeMillis() + sqsMessage.getDelay() * 1000L;
+        attributes.put(DELIVER_AT, MessageAttribute.number(deliverAt).toSQSAttribute());
+        return attributes;
+    }
+
+    private class SendHandler implements AsyncHandler<SendMessageRequest, SendMessageResult> {
+
+        @Override
+        public void onError(Exception e) {
+            if (e instanceof QueueDoesNotExistException) {
+                queueMissing();
+            }
+            logger.error("SQS send message failed.", e);
+        }
+
+        @Override
+        public void onSuccess(SendMessageRequest request, SendMessageResult result) {
+            if (request instanceof TimedSendMessageRequest) {
+                metrics.getSendTime().recordSince(((TimedSendMessageRequest) request).getStartNanos());
+            }
+            logger.debug("SQS message sent successfully: {}", result.getMessageId());
+        }
+    }
+
+    /**
+     * Returns a lazy iterator that reads ahead in full batches and ends once no message arrived for the given idle
+     * time. Moving on to the next message acknowledges the previous one unless it was acknowledged explicitly.
+     */
+    public <T> SQSMessageIterator<T> iterator(SQSMessageFactory<T> factory, long idleTimeout, TimeUnit unit) {
+        return new SQSMessageIterator<>(this, factory, unit.toNanos(idleTimeout));
+    }
+
+    /** Same as {@link #iterator}, closing the stream releases unconsumed messages and flushes pending acks. */
+    public <T> Stream<SQSMessage<T>> stream(SQSMessageFactory<T> factory, long idleTimeout, TimeUnit unit) {
+        SQSMessageIterator<T> iterator = iterator(factory, idleTimeout, unit);
+        return StreamSupport
+            .stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(iterator::close);
+    }
+
+    /** Sends the messages in batches of ten and returns the ones that could not be sent. */
+    public <T> List<SQSMessage<T>> sendMessages(final List<SQSMessage<T>> messages) {
+        boolean fifo = isFifo();
+        List<SendMessageBatchRequestEntry> entries = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            SQSMessage<T> message = messages.get(i);
+            SendMessageBatchRequestEntry entry = new SendMessageBatchRequestEntry()
+                .withId(Integer.toString(i))
+                .withMessageBody(message.getPlainContent())
+                .withDelaySeconds(getSendDelay(message))
+                .withMessageAttributes(createMessageAttributes(message));
+            if (fifo) {
+                entry
+                    .withMessageGroupId(message.getMessageGroupId())
+                    .withMessageDeduplicationId(message.getMessageDeduplicationId());
+            }
+            entries.add(entry);
+        }
+
+        Set<String> failedIds = sendMessageBatch(entries);
+        if (failedIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<SQSMessage<T>> failed = new ArrayList<>(failedIds.size());
+        for (int i = 0; i < messages.size(); i++) {
+            if (failedIds.contains(Integer.toString(i))) {
+                failed.add(messages.get(i));
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Sends the entries in batches of ten, rate-limited per entry, and returns the ids of the entries that failed.
+     * Entry ids have to be unique across the whole list.
+     */
+    public Set<String> sendMessageBatch(final List<SendMessageBatchRequestEntry> entries) {
+        Set<String> failedIds = new HashSet<>();
+        for (int from = 0; from < entries.size(); from += MAX_BATCH_SIZE) {
+            List<SendMessageBatchRequestEntry> batch = entries.subList(
+                from,
+                Math.min(from + MAX_BATCH_SIZE, entries.size())
+            );
+
+            sendRateLimiter.acquire(batch.size());
+            long start = System.nanoTime();
+            try {
+                SendMessageBatchResult result = sqs.sendMessageBatch(
+                    new SendMessageBatchRequest().withQueueUrl(getQueueUrl()).withEntries(batch)
+                );
+                metrics.getSendTime().recordSince(start);
+                for (BatchResultErrorEntry failed : result.getFailed()) {
+                    logger.warn("Sending message failed: {} {}", failed.getCode(), failed.getMessage());
+                    failedIds.add(failed.getId());
+                }
+            } catch (final RuntimeException e) {
+                if (e instanceof QueueDoesNotExistException) {
+                    queueMissing();
+                }
+                logger.error("SQS send message batch failed.", e);
+                for (SendMessageBatchRequestEntry entry : batch) {
+                    failedIds.add(entry.getId());
+                }
+            }
+        }
+        return failedIds;
+    }
+
+    public boolean isFifo() {
+        return configuration.isFifo();
+    }
+
+    /**
+     * Starts sampling queue depth at the configured interval, unless sampling is disabled or was stopped. Receiving
+     * or adding a listener starts it as well.
+     */
+    public void startSampling() {
+        if (depthSampling == null && !samplingStopped && configuration.getDepthSamplingSeconds() > 0) {
+            scheduleSampling();
+        }
+    }
+
+    private synchronized void scheduleSampling() {
+        if (depthSampling == null && !samplingStopped) {
+            depthSampling =
+                QueueDepthSampler.shared().schedule(this, configuration.getDepthSamplingSeconds(), TimeUnit.SECONDS);
+        }
+    }
+
+    /** Stops sampling for good, so the shared timer no longer references this queue. */
+    public synchronized void stopSampling() {
+        samplingStopped = true;
+        if (depthSampling != null) {
+            depthSampling.cancel();
+        }
+    }
+
+    public QueueDepth sampleQueueDepth() {
         GetQueueAttributesRequest getQueueAttributesRequest = new GetQueueAttributesRequest()
-            .withQueueUrl(queueUrl)
-            .withAttributeNames("QueueArn");
+            .withQueueUrl(getQueueUrl())
+            .withAttributeNames(VISIBLE, NOT_VISIBLE, DELAYED);
+        Map<String, String> attributes = sqs.getQueueAttributes(getQueueAttributesRequest).getAttributes();
+
+        QueueDepth depth = metrics.queueDepthSampled(
+            System.currentTimeMillis(),
+            parseCount(attributes.get(VISIBLE)),
+            parseCount(attributes.get(NOT_VISIBLE)),
+            parseCount(attributes.get(DELAYED))
+        );
+        for (QueueDepthListener listener : queueDepthListeners) {
+            listener.queueDepthSampled(this, depth);
+        }
+        return depth;
+    }
 
-        return sqs.getQueueAttributes(getQueueAttributesRequest).getAttributes().get("QueueArn");
+    private static long parseCount(String value) {
+        return value != null ? Long.parseLong(value) : 0;
+    }
+
+    private static long parseTimestamp(String value) {
+        return value != null ? Long.parseLong(value) : 0;
+    }
+
+    public void addQueueDepthListener(QueueDepthListener listener) {
+        queueDepthListeners.add(listener);
+        startSampling();
+    }
+
+    public void removeQueueDepthListener(QueueDepthListener listener) {
+        queueDepthListeners.remove(listener);
+    }
+
+    public ReceiveBackoff getReceiveBackoff() {
+        return receiveBackoff;
+    }
+
+    public QueueMetrics getMetrics() {
+        return metrics;
+    }
+
+    public String getQueueUrl() {
+        return ResolutionCache.join(resolveQueueUrl());
+    }
+
+    /** Looked up on every access, so a failed or invalidated resolution is retried instead of sticking. */
+    private CompletableFuture<String> resolveQueueUrl() {
+        return resolutionCache.resolve(sqs, queueUrlKey, queueUrlLoader);
+    }
+
+    /**
+     * Drops the cached url once the queue turned out to be gone, the next access resolves or recreates it. A
+     * recreated queue has none of the policies applied to the old one.
+     */
+    private void queueMissing() {
+        logger.warn("Queue {} does not exist, resolving its url again", configuration.getQueueName());
+        resolutionCache.invalidate(sqs, queueUrlKey);
+        resolutionCache.invalidate(sqs, policyKey);
+    }
+
+    public String getQueueArn() {
+        return ResolutionCache.join(getQueueArnAsync());
+    }
+
+    public CompletableFuture<String> getQueueArnAsync() {
+        return resolveQueueUrl().thenCompose(
+            url ->
+                resolutionCache.resolve(
+                    sqs,
+                    "queueArn:" + clientScope + "/" + url,
+                    () -> {
+                        GetQueueAttributesRequest getQueueAttributesRequest = new GetQueueAttributesRequest()
+                            .withQueueUrl(url)
+                            .withAttributeNames("QueueArn");
+
+                        return sqs.getQueueAttributes(getQueueAttributesRequest).getAttributes().get("QueueArn");
+                    }
+                )
+        );
     }
 
     public void enableSNS(String topicArn) {
-        SetQueueAttributesRequest setQueueAttributesRequest = new SetQueueAttributesRequest()
-            .withQueueUrl(queueUrl)
-            .addAttributesEntry("Policy", new Policy().withStatements(createPolicyStatement(topicArn)).toJson());
+        String url = getQueueUrl();
+        String policy = new Policy().withStatements(createPolicyStatement(getQueueArn(), topicArn)).toJson();
+
+        resolutionCache.applyIfChanged(
+            sqs,
+            policyKey,
+            policy,
+            () -> {
+                SetQueueAttributesRequest setQueueAttributesRequest = new SetQueueAttributesRequest()
+                    .withQueueUrl(url)
+                    .addAttributesEntry("Policy", policy);
 
-        sqs.setQueueAttributes(setQueueAttributesRequest);
+                sqs.setQueueAttributes(setQueueAttributesRequest);
+            }
+        );
     }
 
-    private Statement createPolicyStatement(String topicArn) {
+    private static Statement createPolicyStatement(String queueArn, String topicArn) {
         return new Statement(Statement.Effect.Allow)
             .withPrincipals(Principal.AllUsers)
             .withActions(SQSActions.SendMessage)
-            .withResources(new Resource(getQueueArn()))
+            .withResources(new Resource(queueArn))
             .withConditions(
                 new ArnCondition(ArnComparisonType.ArnEquals, ConditionFactory.SOURCE_ARN_CONDITION_KEY, topicArn)
             );
@@ -14,12 +14,13 @@
 package de.tschumacher.queueservice.sqs;
 
 import com.amazonaws.regions.Regions;
+import de.tschumacher.queueservice.client.AwsClientSettings;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NonNull;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class SQSQueueConfiguration {
     @NonNull
     private String secretKey;
@@ -45,6 +46,26 @@ public class SQSQueueConfiguration {
     @Builder.Default
     private int retrySeconds = 60 * 2;
 
+    @Builder.Default
+    private boolean adaptiveReceive = false;
+
+    @Builder.Default
+    private int minWaitTimeSeconds = 1;
+
+    @Builder.Default
+    private double sendRateLimit = 0;
+
+    @Builder.Default
+    private double receiveRateLimit = 0;
+
+    @Builder.Default
+    private int depthSamplingSeconds = 0;
+
+    private String resolutionCacheFile;
+
+    @Builder.Default
+    private AwsClientSettings clientSettings = AwsClientSettings.builder().build();
+
     public boolean isFifo() {
         return queueName.toLowerCase().endsWith(".fifo");
     }
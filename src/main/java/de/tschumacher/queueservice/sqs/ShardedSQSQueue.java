@@ -0,0 +1,89 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.sqs;
+
+import de.tschumacher.queueservice.message.SQSMessage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A group of physical queues that act as one, e.g. {@code orders-0.fifo} to {@code orders-7.fifo}. Messages are routed
+ * to a shard by a stable hash of their key, so all messages of one key keep their order within a single shard.
+ * Changing the number of shards moves keys to other shards, so drain the group before resizing it.
+ */
+public class ShardedSQSQueue {
+    private static final String FIFO_SUFFIX = ".fifo";
+
+    private final List<SQSQueue> shards;
+    private final AtomicInteger nextUnkeyed = new AtomicInteger();
+
+    /** Creates the shards {@code <queueName>-0} to {@code <queueName>-<shardCount - 1>}, keeping a .fifo suffix. */
+    public ShardedSQSQueue(final SQSQueueConfiguration configuration, final int shardCount) {
+        this(createShards(configuration, shardCount));
+    }
+
+    public ShardedSQSQueue(final List<SQSQueue> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("A sharded queue needs at least one shard");
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+    }
+
+    private static List<SQSQueue> createShards(final SQSQueueConfiguration configuration, final int shardCount) {
+        List<SQSQueue> shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            String queueName = shardName(configuration.getQueueName(), i);
+            shards.add(new SQSQueue(configuration.toBuilder().queueName(queueName).build()));
+        }
+        return shards;
+    }
+
+    static String shardName(String queueName, int shard) {
+        if (queueName.toLowerCase().endsWith(FIFO_SUFFIX)) {
+            String baseName = queueName.substring(0, queueName.length() - FIFO_SUFFIX.length());
+            return baseName + "-" + shard + FIFO_SUFFIX;
+        }
+        return queueName + "-" + shard;
+    }
+
+    public List<SQSQueue> getShards() {
+        return shards;
+    }
+
+    /** FIFO shards need a key, spreading one ordered stream over several shards would break its order. */
+    public SQSQueue shardFor(final String key) {
+        if (key == null) {
+            if (shards.get(0).isFifo()) {
+                throw new IllegalArgumentException("Messages for FIFO shards need a message group id");
+            }
+            return shards.get(Math.floorMod(nextUnkeyed.getAndIncrement(), shards.size()));
+        }
+        return shards.get(shardIndex(key, shards.size()));
+    }
+
+    /** Sends to the shard of the message group, messages without group are spread round-robin on standard shards. */
+    public void sendMessage(final SQSMessage<?> sqsMessage) {
+        shardFor(sqsMessage.getMessageGroupId()).sendMessage(sqsMessage);
+    }
+
+    static int shardIndex(String key, int shardCount) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return Math.floorMod(hash, shardCount);
+    }
+}
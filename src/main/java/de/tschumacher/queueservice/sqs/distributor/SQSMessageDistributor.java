@@ -13,15 +13,26 @@
  */
 package de.tschumacher.queueservice.sqs.distributor;
 
+import de.tschumacher.queueservice.message.DeduplicationIdGenerator;
+import de.tschumacher.queueservice.message.MessageAttribute;
 import de.tschumacher.queueservice.message.SQSMessage;
 import de.tschumacher.queueservice.message.SQSMessageFactory;
 import de.tschumacher.queueservice.sqs.SQSQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import lombok.AllArgsConstructor;
 
 @AllArgsConstructor
 public class SQSMessageDistributor<T> {
     private final SQSQueue sqsQueue;
     private final SQSMessageFactory<T> factory;
+    private final DeduplicationIdGenerator<T> deduplicationIdGenerator;
+
+    public SQSMessageDistributor(final SQSQueue sqsQueue, final SQSMessageFactory<T> factory) {
+        this(sqsQueue, factory, null);
+    }
 
     public void distribute(final T message) {
         distribute(message, null, null);
@@ -36,10 +47,48 @@ public class SQSMessageDistributor<T> {
     }
 
     public void distribute(final T message, String messageGroupId, Integer delay) {
+        distribute(message, messageGroupId, delay, Collections.emptyMap());
+    }
+
+    public void distribute(
+        final T message,
+        String messageGroupId,
+        Integer delay,
+        Map<String, MessageAttribute> attributes
+    ) {
         SQSMessage<T> sqsMessage = this.factory.createSQSMessage(message);
         sqsMessage.setMessageGroupId(messageGroupId);
         sqsMessage.setDelay(delay);
+        sqsMessage.setMessageAttributes(attributes);
+        DeduplicationIdGenerator.apply(deduplicationIdGenerator, sqsMessage);
 
         this.sqsQueue.sendMessage(sqsMessage);
     }
+
+    /** Sends the messages in batches and returns the ones that could not be sent. */
+    public List<T> distributeBatch(final List<T> messages, String messageGroupId) {
+        return distributeBatch(messages, messageGroupId, Collections.emptyMap());
+    }
+
+    /** Same as {@link #distributeBatch(List, String)}, every message carries the given attributes. */
+    public List<T> distributeBatch(
+        final List<T> messages,
+        String messageGroupId,
+        Map<String, MessageAttribute> attributes
+    ) {
+        List<SQSMessage<T>> sqsMessages = new ArrayList<>(messages.size());
+        for (T message : messages) {
+            SQSMessage<T> sqsMessage = this.factory.createSQSMessage(message);
+            sqsMessage.setMessageGroupId(messageGroupId);
+            sqsMessage.setMessageAttributes(attributes);
+            DeduplicationIdGenerator.apply(deduplicationIdGenerator, sqsMessage);
+            sqsMessages.add(sqsMessage);
+        }
+
+        List<T> failed = new ArrayList<>();
+        for (SQSMessage<T> sqsMessage : this.sqsQueue.sendMessages(sqsMessages)) {
+            failed.add(sqsMessage.getContent());
+        }
+        return failed;
+    }
 }
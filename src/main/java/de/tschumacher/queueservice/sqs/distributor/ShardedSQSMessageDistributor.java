@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.sqs.distributor;
+
+import de.tschumacher.queueservice.message.DeduplicationIdGenerator;
+import de.tschumacher.queueservice.message.MessageAttribute;
+import de.tschumacher.queueservice.message.SQSMessage;
+import de.tschumacher.queueservice.message.SQSMessageFactory;
+import de.tschumacher.queueservice.sqs.ShardedSQSQueue;
+import java.util.Collections;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+
+@AllArgsConstructor
+public class ShardedSQSMessageDistributor<T> {
+    private final ShardedSQSQueue shardedQueue;
+    private final SQSMessageFactory<T> factory;
+    private final DeduplicationIdGenerator<T> deduplicationIdGenerator;
+
+    public ShardedSQSMessageDistributor(final ShardedSQSQueue shardedQueue, final SQSMessageFactory<T> factory) {
+        this(shardedQueue, factory, null);
+    }
+
+    public void distribute(final T message, final String key) {
+        distribute(message, key, null);
+    }
+
+    /** The key selects the shard and, on FIFO shards, is also the message group. */
+    public void distribute(final T message, final String key, final Integer delay) {
+        distribute(message, key, delay, Collections.emptyMap());
+    }
+
+    public void distribute(
+        final T message,
+        final String key,
+        final Integer delay,
+        final Map<String, MessageAttribute> attributes
+    ) {
+        SQSMessage<T> sqsMessage = this.factory.createSQSMessage(message);
+        sqsMessage.setMessageGroupId(key);
+        sqsMessage.setDelay(delay);
+        sqsMessage.setMessageAttributes(attributes);
+        DeduplicationIdGenerator.apply(deduplicationIdGenerator, sqsMessage);
+
+        this.shardedQueue.sendMessage(sqsMessage);
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.timer;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timer for large numbers of short-lived timeouts. Timeouts hash into a fixed ring of buckets by their deadline, so
+ * scheduling and cancelling are O(1) and lock free for callers, at the cost of firing up to one tick late. A single
+ * worker thread advances the wheel, due tasks are handed to the task executor.
+ */
+public class HashedWheelTimer {
+    private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+    private static final long DEFAULT_TICK_MILLIS = 10;
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+    private static final long DEFAULT_MAX_PENDING_TIMEOUTS = 1 << 20;
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+    private static final int DEFAULT_TASK_QUEUE_SIZE = 10_000;
+    private static final HashedWheelTimer SHARED = new HashedWheelTimer(
+        DEFAULT_TICK_MILLIS,
+        TimeUnit.MILLISECONDS,
+        DEFAULT_WHEEL_SIZE,
+        DEFAULT_MAX_PENDING_TIMEOUTS,
+        createTaskExecutor()
+    );
+    private static final AtomicIntegerFieldUpdater<WheelTimeout> STATE = AtomicIntegerFieldUpdater.newUpdater(
+        WheelTimeout.class,
+        "state"
+    );
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long maxPendingTimeouts;
+    private final Executor taskExecutor;
+    private final Queue<WheelTimeout> added = new ConcurrentLinkedQueue<>();
+    private final Queue<WheelTimeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingTimeouts = new AtomicLong();
+    private final long startTime;
+    private final Thread worker;
+    private volatile boolean stopped;
+
+    /**
+     * @param wheelSize rounded up to a power of two
+     * @param maxPendingTimeouts further timeouts are rejected beyond this, 0 means unbounded
+     */
+    public HashedWheelTimer(
+        long tickDuration,
+        TimeUnit unit,
+        int wheelSize,
+        long maxPendingTimeouts,
+        Executor taskExecutor
+    ) {
+        this.tickNanos = Math.max(1, unit.toNanos(tickDuration));
+        this.wheel = new Bucket[Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = wheel.length - 1;
+        this.maxPendingTimeouts = maxPendingTimeouts;
+        this.taskExecutor = taskExecutor;
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(this::run, "queueservice-timer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /** Timer shared by all receivers and queues in the JVM. Tasks run on a pool of daemon threads. */
+    public static HashedWheelTimer shared() {
+        return SHARED;
+    }
+
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        if (stopped) {
+            throw new IllegalStateException("Timer was stopped");
+        }
+        long pending = pendingTimeouts.incrementAndGet();
+        if (maxPendingTimeouts > 0 && pending > maxPendingTimeouts) {
+            pendingTimeouts.decrementAndGet();
+            throw new RejectedExecutionException("Too many pending timeouts: " + maxPendingTimeouts);
+        }
+
+        long deadline = System.nanoTime() - startTime + unit.toNanos(Math.max(0, delay));
+        WheelTimeout timeout = new WheelTimeout(task, deadline);
+        added.add(timeout);
+        return timeout;
+    }
+
+    /** Runs the task repeatedly, waiting the delay between the end of one run and the start of the next. */
+    public Timeout scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        PeriodicTimeout timeout = new PeriodicTimeout(task, delay, unit);
+        timeout.schedule(initialDelay);
+        return timeout;
+    }
+
+    public long getPendingTimeouts() {
+        return pendingTimeouts.get();
+    }
+
+    /** Stops the worker, pending timeouts never fire. Not meant for the shared timer. */
+    public void stop() {
+        stopped = true;
+        worker.interrupt();
+    }
+
+    private void run() {
+        long tick = 0;
+        while (!stopped) {
+            if (!waitForTick(tick)) {
+                break;
+            }
+            removeCancelled();
+            transferAdded(tick);
+            wheel[(int) (tick & mask)].expire();
+            tick++;
+        }
+    }
+
+    private boolean waitForTick(long tick) {
+        long target = tickNanos * (tick + 1);
+        while (true) {
+            long sleepNanos = target - (System.nanoTime() - startTime);
+            if (sleepNanos <= 0) {
+                return true;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            } catch (final InterruptedException e) {
+                if (stopped) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private void removeCancelled() {
+        WheelTimeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferAdded(long tick) {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            WheelTimeout timeout = added.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state != WheelTimeout.PENDING) {
+                pendingTimeouts.decrementAndGet();
+                continue;
+            }
+
+            long dueTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (dueTick - tick) / wheel.length;
+            wheel[(int) (Math.max(dueTick, tick) & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * Tasks may block on AWS calls, so they run on a small bounded pool instead of the worker thread. Once its queue
+     * is full the worker runs tasks itself, which delays the wheel rather than dropping a poll or a flush.
+     */
+    private static Executor createTaskExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            threads,
+            threads,
+            60,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(DEFAULT_TASK_QUEUE_SIZE),
+            runnable -> {
+                Thread thread = new Thread(runnable, "queueservice-timer-task-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private final class WheelTimeout implements Timeout {
+        static final int PENDING = 0;
+        static final int CANCELLED = 1;
+        static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        // Not private, so the field updater can reach it on Java 8.
+        volatile int state = PENDING;
+
+        // Only touched by the worker thread.
+        long remainingRounds;
+        Bucket bucket;
+        WheelTimeout next;
+        WheelTimeout prev;
+
+        WheelTimeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+                return false;
+            }
+            cancelled.add(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        void expire() {
+            if (!STATE.compareAndSet(this, PENDING, EXPIRED)) {
+                return;
+            }
+            try {
+                taskExecutor.execute(task);
+            } catch (final Throwable e) {
+                logger.warn("Running timer task failed", e);
+            }
+        }
+    }
+
+    /** Doubly linked list of the timeouts hashed to one slot, only touched by the worker thread. */
+    private final class Bucket {
+        private WheelTimeout head;
+        private WheelTimeout tail;
+
+        void add(WheelTimeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire() {
+            WheelTimeout timeout = head;
+            while (timeout != null) {
+                WheelTimeout next = timeout.next;
+                if (timeout.state != WheelTimeout.PENDING) {
+                    remove(timeout);
+                } else if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(WheelTimeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = timeout.next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            pendingTimeouts.decrementAndGet();
+        }
+    }
+
+    private final class PeriodicTimeout implements Timeout, Runnable {
+        private final Runnable task;
+        private final long delay;
+        private final TimeUnit unit;
+        private volatile Timeout current;
+        private volatile boolean cancelled;
+
+        PeriodicTimeout(Runnable task, long delay, TimeUnit unit) {
+            this.task = task;
+            this.delay = delay;
+            this.unit = unit;
+        }
+
+        void schedule(long delay) {
+            current = newTimeout(this, delay, unit);
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (final Throwable e) {
+                logger.warn("Running periodic timer task failed", e);
+            } finally {
+                if (!cancelled && !stopped) {
+                    schedule(delay);
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            if (cancelled) {
+                return false;
+            }
+            cancelled = true;
+            current.cancel();
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return false;
+        }
+    }
+}
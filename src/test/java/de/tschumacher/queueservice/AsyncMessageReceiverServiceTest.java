@@ -0,0 +1,180 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.amazonaws.services.sqs.model.Message;
+import de.tschumacher.queueservice.message.TestDO;
+import de.tschumacher.queueservice.metrics.QueueMetrics;
+import de.tschumacher.queueservice.sqs.ReceiveBackoff;
+import de.tschumacher.queueservice.sqs.SQSQueue;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+public class AsyncMessageReceiverServiceTest {
+    @Mock
+    private SQSQueue queue;
+
+    @Mock
+    private MessageReceiver<TestDO> messageReceiver;
+
+    private AsyncMessageReceiverService<TestDO> service;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        Mockito.when(this.queue.getActivePollers(1)).thenReturn(1);
+        Mockito.when(this.messageReceiver.tryStartPoll()).thenReturn(true);
+        Mockito.when(this.queue.getReceiveBackoff()).thenReturn(new ReceiveBackoff(new QueueMetrics()));
+        this.service = new AsyncMessageReceiverService<>(this.queue, this.messageReceiver, 1, 2);
+    }
+
+    @Test
+    public void shouldRejectCoalescingReceivers() {
+        Mockito.when(this.messageReceiver.isCoalescing()).thenReturn(true);
+
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new AsyncMessageReceiverService<>(this.queue, this.messageReceiver, 1, 2)
+        );
+    }
+
+    @Test
+    public void shouldHandleMessagesAndReleaseLatePollsOnStop() {
+        Message message1 = new Message().withMessageId("messageId1").withReceiptHandle("receiptHandle1");
+        Message message2 = new Message().withMessageId("messageId2").withReceiptHandle("receiptHandle2");
+        Message message3 = new Message().withMessageId("messageId3").withReceiptHandle("receiptHandle3");
+        CompletableFuture<List<Message>> pendingPoll = new CompletableFuture<>();
+
+        Mockito
+            .when(this.queue.receiveMessagesAsync())
+            .thenReturn(CompletableFuture.completedFuture(Arrays.asList(message1, message2)), pendingPoll);
+
+        this.service.start();
+
+        Mockito.verify(this.messageReceiver, Mockito.timeout(1000)).handleMessage(this.queue, message1);
+        Mockito.verify(this.messageReceiver, Mockito.timeout(1000)).handleMessage(this.queue, message2);
+        Mockito.verify(this.queue, Mockito.timeout(1000).times(2)).receiveMessagesAsync();
+
+        CompletableFuture<Boolean> stopped = CompletableFuture.supplyAsync(
+            () -> this.service.stop(5, TimeUnit.SECONDS)
+        );
+        while (this.service.isRunning()) {
+            Thread.yield();
+        }
+        pendingPoll.complete(Collections.singletonList(message3));
+
+        assertTrue(stopped.join());
+
+        Mockito.verify(this.queue).releaseMessages(Collections.singletonList("receiptHandle3"));
+        Mockito.verify(this.messageReceiver).isCoalescing();
+        Mockito.verify(this.messageReceiver, Mockito.times(2)).tryStartPoll();
+        Mockito.verify(this.messageReceiver, Mockito.times(2)).pollCompleted();
+        Mockito.verifyNoMoreInteractions(this.messageReceiver);
+    }
+
+    @Test
+    public void shouldParkPollAtCapacityAndResumeOnceHandled() throws InterruptedException {
+        Message message1 = new Message().withMessageId("messageId1").withReceiptHandle("receiptHandle1");
+        Message message2 = new Message().withMessageId("messageId2").withReceiptHandle("receiptHandle2");
+        Message message3 = new Message().withMessageId("messageId3").withReceiptHandle("receiptHandle3");
+        Message message4 = new Message().withMessageId("messageId4").withReceiptHandle("receiptHandle4");
+        CountDownLatch handling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito
+            .when(this.queue.receiveMessagesAsync())
+            .thenReturn(
+                CompletableFuture.completedFuture(Arrays.asList(message1, message2, message3)),
+                CompletableFuture.completedFuture(Collections.singletonList(message4)),
+                new CompletableFuture<>()
+            );
+        Mockito
+            .doAnswer(
+                invocation -> {
+                    handling.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    return null;
+                }
+            )
+            .when(this.messageReceiver)
+            .handleMessage(this.queue, message1);
+        AsyncMessageReceiverService<TestDO> service = new AsyncMessageReceiverService<>(
+            this.queue,
+            this.messageReceiver,
+            1,
+            1
+        );
+
+        service.start();
+
+        assertTrue(handling.await(1, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        Mockito.verify(this.queue).receiveMessagesAsync();
+
+        release.countDown();
+
+        Mockito.verify(this.messageReceiver, Mockito.timeout(1000)).handleMessage(this.queue, message4);
+        Mockito.verify(this.queue, Mockito.timeout(1000).times(3)).receiveMessagesAsync();
+        service.stop(0, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void shouldBackOffAndPollAgainAfterFailedReceive() {
+        Message message1 = new Message().withMessageId("messageId1").withReceiptHandle("receiptHandle1");
+        CompletableFuture<List<Message>> failedPoll = new CompletableFuture<>();
+        failedPoll.completeExceptionally(new IllegalStateException("receive failed"));
+        Mockito
+            .when(this.queue.receiveMessagesAsync())
+            .thenReturn(
+                failedPoll,
+                CompletableFuture.completedFuture(Collections.singletonList(message1)),
+                new CompletableFuture<>()
+            );
+
+        this.service.start();
+
+        Mockito.verify(this.messageReceiver, Mockito.timeout(2000)).handleMessage(this.queue, message1);
+        Mockito.verify(this.messageReceiver, Mockito.timeout(1000).times(2)).pollCompleted();
+        this.service.stop(0, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void shouldRetryPollRefusedByReceiver() {
+        Message message1 = new Message().withMessageId("messageId1").withReceiptHandle("receiptHandle1");
+        Mockito.when(this.messageReceiver.tryStartPoll()).thenReturn(false, true);
+        Mockito
+            .when(this.queue.receiveMessagesAsync())
+            .thenReturn(
+                CompletableFuture.completedFuture(Collections.singletonList(message1)),
+                new CompletableFuture<>()
+            );
+
+        this.service.start();
+
+        Mockito.verify(this.messageReceiver, Mockito.timeout(3000)).handleMessage(this.queue, message1);
+        Mockito.verify(this.messageReceiver, Mockito.atLeast(2)).tryStartPoll();
+        this.service.stop(0, TimeUnit.SECONDS);
+    }
+}
@@ -13,16 +13,27 @@
  */
 package de.tschumacher.queueservice;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import de.tschumacher.queueservice.circuitbreaker.CircuitBreaker;
+import de.tschumacher.queueservice.coalescing.MessageCoalescer;
+import de.tschumacher.queueservice.deadletter.PoisonMessagePolicy;
 import de.tschumacher.queueservice.message.MessageHandler;
 import de.tschumacher.queueservice.message.SQSMessage;
 import de.tschumacher.queueservice.message.SQSMessageFactory;
 import de.tschumacher.queueservice.message.TestDO;
 import de.tschumacher.queueservice.MessageReceiver;
+import de.tschumacher.queueservice.routing.MessageMatcher;
+import de.tschumacher.queueservice.routing.MessageRouter;
 import de.tschumacher.queueservice.sqs.SQSQueue;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -120,4 +131,279 @@ public class MessageReceiverTest {
         Mockito.verify(this.handler).receivedMessage(this.queue, sqsMessage);
         Mockito.verify(this.queue).retryMessage("receiptHandle1");
     }
+
+    @Test
+    public void shouldForwardPoisonMessagesWithoutHandlingThem() {
+        SQSQueue deadLetterQueue = Mockito.mock(SQSQueue.class);
+        PoisonMessagePolicy policy = PoisonMessagePolicy
+            .builder()
+            .deadLetterQueue(deadLetterQueue)
+            .maxReceiveCount(3)
+            .poisonException(IllegalArgumentException.class)
+            .lingerMillis(60_000)
+            .build();
+        this.sqsMessageReceiver =
+            MessageReceiver
+                .<TestDO>builder()
+                .handler(this.handler)
+                .factory(this.factory)
+                .poisonMessagePolicy(policy)
+                .build();
+
+        List<Message> messages = Arrays.asList(
+            new Message()
+                .withMessageId("messageId1")
+                .withReceiptHandle("receiptHandle1")
+                .addAttributesEntry("ApproximateReceiveCount", "4"),
+            new Message()
+                .withMessageId("messageId2")
+                .withReceiptHandle("receiptHandle2")
+                .addAttributesEntry("ApproximateReceiveCount", "1")
+        );
+        final SQSMessage<TestDO> sqsMessage = SQSMessage.<TestDO>builder().messageId("messageId2").build();
+
+        Mockito.when(this.queue.receiveMessages()).thenReturn(messages);
+        Mockito.when(this.queue.getQueueUrl()).thenReturn("queueUrl1");
+        Mockito.when(this.factory.createSQSMessage(messages.get(1))).thenReturn(sqsMessage);
+        Mockito
+            .doThrow(new IllegalArgumentException("Invalid"))
+            .when(this.handler)
+            .receivedMessage(this.queue, sqsMessage);
+        Mockito.when(deadLetterQueue.sendMessageBatch(Mockito.anyList())).thenReturn(Collections.emptySet());
+
+        this.sqsMessageReceiver.receiveMessages(this.queue);
+        policy.flush();
+
+        Mockito.verify(this.queue).receiveMessages();
+        Mockito.verify(this.factory).createSQSMessage(messages.get(1));
+        Mockito.verify(this.handler).receivedMessage(this.queue, sqsMessage);
+        Mockito.verify(this.queue).getQueueUrl();
+        Mockito.verify(deadLetterQueue).sendMessageBatch(Mockito.argThat(entries -> entries.size() == 2));
+        Mockito.verify(this.queue).deleteMessages(Arrays.asList("receiptHandle1", "receiptHandle2"));
+    }
+
+    @Test
+    public void shouldStopPollingWhenCircuitBreakerOpens() {
+        CircuitBreaker circuitBreaker = CircuitBreaker.builder().windowSize(2).minimumCalls(2).build();
+        this.sqsMessageReceiver =
+            MessageReceiver
+                .<TestDO>builder()
+                .handler(this.handler)
+                .factory(this.factory)
+                .circuitBreaker(circuitBreaker)
+                .build();
+
+        List<Message> messages = Arrays.asList(
+            new Message().withMessageId("messageId1").withReceiptHandle("receiptHandle1"),
+            new Message().withMessageId("messageId2").withReceiptHandle("receiptHandle2")
+        );
+        final SQSMessage<TestDO> sqsMessage = SQSMessage.<TestDO>builder().build();
+
+        Mockito.when(this.queue.receiveMessages()).thenReturn(messages);
+        Mockito.when(this.factory.createSQSMessage(Mockito.any(Message.class))).thenReturn(sqsMessage);
+        Mockito.doThrow(new RuntimeException("Error")).when(this.handler).receivedMessage(this.queue, sqsMessage);
+
+        assertTrue(this.sqsMessageReceiver.receiveMessages(this.queue));
+        assertFalse(this.sqsMessageReceiver.receiveMessages(this.queue));
+
+        Mockito.verify(this.queue).receiveMessages();
+        Mockito.verify(this.factory, Mockito.times(2)).createSQSMessage(Mockito.any(Message.class));
+        Mockito.verify(this.handler, Mockito.times(2)).receivedMessage(this.queue, sqsMessage);
+        Mockito.verify(this.queue).retryMessage("receiptHandle1");
+        Mockito.verify(this.queue).retryMessage("receiptHandle2");
+    }
+
+    @Test
+    public void shouldNotCountMalformedMessagesAsCircuitBreakerFailures() {
+        CircuitBreaker circuitBreaker = CircuitBreaker.builder().windowSize(2).minimumCalls(2).build();
+        this.sqsMessageReceiver =
+            MessageReceiver
+                .<TestDO>builder()
+                .handler(this.handler)
+                .factory(this.factory)
+                .circuitBreaker(circuitBreaker)
+                .build();
+
+        List<Message> messages = Arrays.asList(
+            new Message().withMessageId("messageId1").withReceiptHandle("receiptHandle1"),
+            new Message().withMessageId("messageId2").withReceiptHandle("receiptHandle2")
+        );
+
+        Mockito.when(this.queue.receiveMessages()).thenReturn(messages);
+        Mockito
+            .when(this.factory.createSQSMessage(Mockito.any(Message.class)))
+            .thenThrow(new RuntimeException("Error"));
+
+        assertTrue(this.sqsMessageReceiver.receiveMessages(this.queue));
+        assertTrue(this.sqsMessageReceiver.receiveMessages(this.queue));
+
+        Mockito.verify(this.queue, Mockito.times(2)).receiveMessages();
+        Mockito.verify(this.factory, Mockito.times(4)).createSQSMessage(Mockito.any(Message.class));
+        Mockito.verify(this.queue, Mockito.times(2)).retryMessage("receiptHandle1");
+        Mockito.verify(this.queue, Mockito.times(2)).retryMessage("receiptHandle2");
+    }
+
+    @Test
+    public void shouldReleaseRemainingMessagesWhenStopped() {
+        List<Message> messages = Arrays.asList(
+            new Message().withMessageId("messageId1").withReceiptHandle("receiptHandle1"),
+            new Message().withMessageId("messageId2").withReceiptHandle("receiptHandle2"),
+            new Message().withMessageId("messageId3").withReceiptHandle("receiptHandle3")
+        );
+
+        final SQSMessage<TestDO> sqsMessage1 = SQSMessage
+            .<TestDO>builder()
+            .messageId("messageId1")
+            .receiptHandle("receiptHandle1")
+            .build();
+
+        Mockito.when(this.queue.receiveMessages()).thenReturn(messages);
+        Mockito.when(this.factory.createSQSMessage(messages.get(0))).thenReturn(sqsMessage1);
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Mockito.doAnswer(invocation -> {
+            running.set(false);
+            return null;
+        }).when(this.handler).receivedMessage(this.queue, sqsMessage1);
+
+        this.sqsMessageReceiver.receiveMessages(this.queue, running::get);
+
+        Mockito.verify(this.queue).receiveMessages();
+        Mockito.verify(this.factory).createSQSMessage(messages.get(0));
+        Mockito.verify(this.handler).receivedMessage(this.queue, sqsMessage1);
+        Mockito.verify(this.queue).deleteMessage("receiptHandle1");
+        Mockito.verify(this.queue).releaseMessages(Arrays.asList("receiptHandle2", "receiptHandle3"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldRouteByAttributeBeforeDecoding() {
+        MessageHandler<TestDO> orderHandler = Mockito.mock(MessageHandler.class);
+        this.sqsMessageReceiver =
+            MessageReceiver
+                .<TestDO>builder()
+                .handler(this.handler)
+                .factory(this.factory)
+                .router(
+                    MessageRouter
+                        .<TestDO>builder()
+                        .route(MessageMatcher.attributeEquals("type", "order"), orderHandler)
+                        .drop(MessageMatcher.attributeEquals("type", "heartbeat"))
+                        .build()
+                )
+                .build();
+        List<Message> messages = Arrays.asList(
+            typedMessage("1", "order"),
+            typedMessage("2", "heartbeat"),
+            typedMessage("3", "invoice")
+        );
+        final SQSMessage<TestDO> order = SQSMessage.<TestDO>builder().receiptHandle("receiptHandle1").build();
+        final SQSMessage<TestDO> invoice = SQSMessage.<TestDO>builder().receiptHandle("receiptHandle3").build();
+
+        Mockito.when(this.queue.receiveMessages()).thenReturn(messages);
+        Mockito.when(this.factory.createSQSMessage(messages.get(0))).thenReturn(order);
+        Mockito.when(this.factory.createSQSMessage(messages.get(2))).thenReturn(invoice);
+
+        this.sqsMessageReceiver.receiveMessages(this.queue);
+
+        Mockito.verify(this.queue).receiveMessages();
+        Mockito.verify(this.factory).createSQSMessage(messages.get(0));
+        Mockito.verify(this.factory).createSQSMessage(messages.get(2));
+        Mockito.verify(orderHandler).receivedMessage(this.queue, order);
+        Mockito.verify(this.handler).receivedMessage(this.queue, invoice);
+        Mockito.verify(this.queue).deleteMessage("receiptHandle1");
+        Mockito.verify(this.queue).deleteMessage("receiptHandle2");
+        Mockito.verify(this.queue).deleteMessage("receiptHandle3");
+        Mockito.verifyNoMoreInteractions(orderHandler);
+    }
+
+    @Test
+    public void shouldHandleOnlyLatestMessagePerKey() {
+        this.sqsMessageReceiver =
+            MessageReceiver
+                .<TestDO>builder()
+                .handler(this.handler)
+                .factory(this.factory)
+                .coalescer(MessageCoalescer.<TestDO>byAttribute("type").window(1, TimeUnit.SECONDS).build())
+                .build();
+        List<Message> messages = Arrays.asList(
+            typedMessage("1", "entity-1").addAttributesEntry("SentTimestamp", "1000"),
+            typedMessage("2", "entity-1").addAttributesEntry("SentTimestamp", "3000"),
+            typedMessage("3", "entity-2").addAttributesEntry("SentTimestamp", "1500")
+        );
+        List<Message> more = Collections.singletonList(
+            typedMessage("4", "entity-1").addAttributesEntry("SentTimestamp", "2000")
+        );
+        final SQSMessage<TestDO> latest1 = SQSMessage.<TestDO>builder().receiptHandle("receiptHandle2").build();
+        final SQSMessage<TestDO> latest2 = SQSMessage.<TestDO>builder().receiptHandle("receiptHandle3").build();
+
+        Mockito.when(this.queue.receiveMessages()).thenReturn(messages);
+        Mockito.when(this.queue.receiveMessages(0)).thenReturn(more).thenReturn(Collections.emptyList());
+        Mockito.when(this.factory.createSQSMessage(messages.get(1))).thenReturn(latest1);
+        Mockito.when(this.factory.createSQSMessage(messages.get(2))).thenReturn(latest2);
+
+        this.sqsMessageReceiver.receiveMessages(this.queue);
+
+        Mockito.verify(this.queue).receiveMessages();
+        Mockito.verify(this.queue, Mockito.times(2)).receiveMessages(0);
+        Mockito.verify(this.factory).createSQSMessage(messages.get(1));
+        Mockito.verify(this.factory).createSQSMessage(messages.get(2));
+        Mockito.verify(this.handler).receivedMessage(this.queue, latest1);
+        Mockito.verify(this.handler).receivedMessage(this.queue, latest2);
+        Mockito.verify(this.queue).deleteMessage("receiptHandle2");
+        Mockito.verify(this.queue).deleteMessage("receiptHandle3");
+        Mockito.verify(this.queue).deleteMessages(Arrays.asList("receiptHandle1", "receiptHandle4"));
+    }
+
+    @Test
+    public void shouldRetryMergedMessagesTogetherWhenHandlerFails() {
+        this.sqsMessageReceiver =
+            MessageReceiver
+                .<TestDO>builder()
+                .handler(this.handler)
+                .factory(this.factory)
+                .coalescer(
+                    MessageCoalescer
+                        .<TestDO>byAttribute("type")
+                        .merge((older, newer) -> new TestDO(older.getContent() + newer.getContent()))
+                        .build()
+                )
+                .build();
+        List<Message> messages = Arrays.asList(
+            typedMessage("1", "entity-1").addAttributesEntry("SentTimestamp", "1000"),
+            typedMessage("2", "entity-1").addAttributesEntry("SentTimestamp", "2000")
+        );
+        final SQSMessage<TestDO> older = SQSMessage.<TestDO>builder().content(new TestDO("a")).build();
+        final SQSMessage<TestDO> latest = SQSMessage
+            .<TestDO>builder()
+            .content(new TestDO("b"))
+            .receiptHandle("receiptHandle2")
+            .build();
+
+        Mockito.when(this.queue.receiveMessages()).thenReturn(messages);
+        Mockito.when(this.queue.receiveMessages(0)).thenReturn(Collections.emptyList());
+        Mockito.when(this.factory.createSQSMessage(messages.get(0))).thenReturn(older);
+        Mockito.when(this.factory.createSQSMessage(messages.get(1))).thenReturn(latest);
+        Mockito.doThrow(new RuntimeException("failed")).when(this.handler).receivedMessage(this.queue, latest);
+
+        this.sqsMessageReceiver.receiveMessages(this.queue);
+
+        Mockito.verify(this.queue).receiveMessages();
+        Mockito.verify(this.queue).receiveMessages(0);
+        Mockito.verify(this.factory).createSQSMessage(messages.get(0));
+        Mockito.verify(this.factory).createSQSMessage(messages.get(1));
+        Mockito.verify(this.handler).receivedMessage(this.queue, latest);
+        Mockito.verify(this.queue).retryMessage("receiptHandle2");
+        Mockito.verify(this.queue).retryMessages(Collections.singletonList("receiptHandle1"));
+    }
+
+    private static Message typedMessage(String id, String type) {
+        return new Message()
+            .withMessageId("messageId" + id)
+            .withReceiptHandle("receiptHandle" + id)
+            .addMessageAttributesEntry(
+                "type",
+                new MessageAttributeValue().withDataType("String").withStringValue(type)
+            );
+    }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.circuitbreaker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class CircuitBreakerTest {
+    private long now = 0;
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(0.5, 10, 4, 1000, 1, 2, () -> now);
+
+    @Test
+    public void shouldStayClosedBelowMinimumCalls() {
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.onFailure();
+        }
+
+        assertEquals(CircuitState.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void shouldOpenWhenFailureRateReachesThreshold() {
+        for (int i = 0; i < 5; i++) {
+            circuitBreaker.onSuccess();
+        }
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onFailure();
+        }
+        assertEquals(CircuitState.CLOSED, circuitBreaker.getState());
+
+        circuitBreaker.onFailure();
+
+        assertEquals(CircuitState.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void shouldProbeWithLimitedConcurrencyAndCloseAfterSuccesses() {
+        open();
+        now += TimeUnit.MILLISECONDS.toNanos(1000);
+
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertEquals(CircuitState.HALF_OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+
+        circuitBreaker.onSuccess();
+        circuitBreaker.releasePermission();
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onSuccess();
+
+        assertEquals(CircuitState.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertTrue(circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void shouldReopenWhenProbeFails() {
+        open();
+        now += TimeUnit.MILLISECONDS.toNanos(1000);
+        assertTrue(circuitBreaker.tryAcquirePermission());
+
+        circuitBreaker.onFailure();
+
+        assertEquals(CircuitState.OPEN, circuitBreaker.getState());
+        now += TimeUnit.MILLISECONDS.toNanos(999);
+        assertFalse(circuitBreaker.tryAcquirePermission());
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onFailure();
+        }
+        assertEquals(CircuitState.OPEN, circuitBreaker.getState());
+    }
+}
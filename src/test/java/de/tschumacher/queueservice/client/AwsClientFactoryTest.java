@@ -0,0 +1,94 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.client;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class AwsClientFactoryTest {
+    private AwsClientFactory factory;
+
+    @BeforeEach
+    public void setUp() {
+        this.factory = new AwsClientFactory();
+    }
+
+    @AfterEach
+    public void shutDown() {
+        this.factory.shutdown();
+    }
+
+    @Test
+    public void shouldShareSQSClientForSameAccountAndRegion() {
+        AwsClientSettings settings = AwsClientSettings.builder().maxConnections(200).build();
+
+        assertSame(
+            this.factory.sqs("accessKey1", "secretKey1", "eu-central-1", settings),
+            this.factory.sqs(
+                    "accessKey1",
+                    "secretKey1",
+                    "eu-central-1",
+                    AwsClientSettings.builder().maxConnections(200).build()
+                )
+        );
+    }
+
+    @Test
+    public void shouldSeparateSQSClientsPerRegionAndSettings() {
+        AwsClientSettings settings = AwsClientSettings.builder().build();
+
+        assertNotSame(
+            this.factory.sqs("accessKey1", "secretKey1", "eu-central-1", settings),
+            this.factory.sqs("accessKey1", "secretKey1", "eu-west-1", settings)
+        );
+        assertNotSame(
+            this.factory.sqs("accessKey1", "secretKey1", "eu-central-1", settings),
+            this.factory.sqs(
+                    "accessKey1",
+                    "secretKey1",
+                    "eu-central-1",
+                    AwsClientSettings.builder().maxConnections(5).build()
+                )
+        );
+    }
+
+    @Test
+    public void shouldKeyClientsBySettingsAtCreationTime() {
+        AwsClientSettings settings = AwsClientSettings.builder().build();
+        AmazonSQSAsync client = this.factory.sqs("accessKey1", "secretKey1", "eu-central-1", settings);
+
+        settings.setMaxConnections(5);
+
+        assertNotSame(client, this.factory.sqs("accessKey1", "secretKey1", "eu-central-1", settings));
+        assertSame(
+            client,
+            this.factory.sqs("accessKey1", "secretKey1", "eu-central-1", AwsClientSettings.builder().build())
+        );
+    }
+
+    @Test
+    public void shouldShareSNSClientForSameAccountAndRegion() {
+        AwsClientSettings settings = AwsClientSettings.builder().build();
+
+        assertSame(
+            this.factory.sns("accessKey1", "secretKey1", "eu-central-1", settings),
+            this.factory.sns("accessKey1", "secretKey1", "eu-central-1", settings)
+        );
+    }
+}
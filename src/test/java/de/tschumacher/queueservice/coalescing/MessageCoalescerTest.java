@@ -0,0 +1,84 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.coalescing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import de.tschumacher.queueservice.message.SQSMessageFactory;
+import de.tschumacher.queueservice.message.TestDO;
+import de.tschumacher.queueservice.message.coder.GsonSQSCoder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class MessageCoalescerTest {
+    private final SQSMessageFactory<TestDO> factory = new SQSMessageFactory<>(new GsonSQSCoder<>(TestDO.class));
+
+    @Test
+    public void shouldKeepLatestMessagePerAttribute() {
+        MessageCoalescer<TestDO> coalescer = MessageCoalescer.<TestDO>byAttribute("entity").build();
+        Message older = message("1", "{\"content\":\"a\"}", 2000).addMessageAttributesEntry("entity", value("e1"));
+        Message newer = message("2", "{\"content\":\"b\"}", 3000).addMessageAttributesEntry("entity", value("e1"));
+        Message unkeyed = message("3", "{\"content\":\"c\"}", 1000);
+
+        List<CoalescedMessage<TestDO>> coalesced = coalescer.coalesce(Arrays.asList(newer, unkeyed, older), factory);
+
+        assertEquals(2, coalesced.size());
+        assertEquals(unkeyed, coalesced.get(0).getMessage());
+        assertTrue(coalesced.get(0).getSuperseded().isEmpty());
+        assertEquals(newer, coalesced.get(1).getMessage());
+        assertNull(coalesced.get(1).getSqsMessage());
+        assertEquals(Collections.singletonList(older), coalesced.get(1).getSuperseded());
+    }
+
+    @Test
+    public void shouldMergeContentInSentOrder() {
+        MessageCoalescer<TestDO> coalescer = MessageCoalescer
+            .<TestDO>byContent(content -> content.getContent().substring(0, 1))
+            .merge((older, newer) -> new TestDO(older.getContent() + "," + newer.getContent()))
+            .build();
+        Message first = message("1", "{\"content\":\"a1\"}", 1000);
+        Message second = message("2", "{\"content\":\"a2\"}", 2000);
+        Message third = message("3", "{\"content\":\"a3\"}", 3000);
+        Message other = message("4", "{\"content\":\"b1\"}", 1000);
+
+        List<CoalescedMessage<TestDO>> coalesced = coalescer.coalesce(
+            Arrays.asList(third, other, first, second),
+            factory
+        );
+
+        assertEquals(2, coalesced.size());
+        assertEquals(third, coalesced.get(0).getMessage());
+        assertEquals("a1,a2,a3", coalesced.get(0).getSqsMessage().getContent().getContent());
+        assertEquals(Arrays.asList(first, second), coalesced.get(0).getSuperseded());
+        assertEquals("b1", coalesced.get(1).getSqsMessage().getContent().getContent());
+    }
+
+    private static Message message(String id, String body, long sentTimestamp) {
+        return new Message()
+            .withMessageId("messageId" + id)
+            .withReceiptHandle("receiptHandle" + id)
+            .withBody(body)
+            .addAttributesEntry("SentTimestamp", Long.toString(sentTimestamp));
+    }
+
+    private static MessageAttributeValue value(String value) {
+        return new MessageAttributeValue().withDataType("String").withStringValue(value);
+    }
+}
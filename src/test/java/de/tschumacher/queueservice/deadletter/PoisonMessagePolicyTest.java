@@ -0,0 +1,120 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.deadletter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.tschumacher.queueservice.sqs.SQSQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class PoisonMessagePolicyTest {
+    @Mock
+    private SQSQueue source;
+
+    @Mock
+    private SQSQueue deadLetterQueue;
+
+    private PoisonMessagePolicy policy;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(source.getQueueUrl()).thenReturn("queueUrl1");
+        policy =
+            PoisonMessagePolicy
+                .builder()
+                .deadLetterQueue(deadLetterQueue)
+                .maxReceiveCount(5)
+                .poisonException(IllegalStateException.class)
+                .lingerMillis(60_000)
+                .build();
+    }
+
+    @AfterEach
+    public void shutDown() {
+        verifyNoMoreInteractions(deadLetterQueue);
+    }
+
+    @Test
+    public void shouldDetectPoisonMessages() {
+        assertTrue(policy.exceedsReceiveCount(message(0).addAttributesEntry("ApproximateReceiveCount", "6")));
+        assertFalse(policy.exceedsReceiveCount(message(0).addAttributesEntry("ApproximateReceiveCount", "5")));
+        assertTrue(policy.isPoison(new IllegalStateException()));
+        assertFalse(policy.isPoison(new RuntimeException()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldSendFullBatchesImmediatelyWithFailureMetadata() {
+        when(deadLetterQueue.sendMessageBatch(anyList())).thenReturn(Collections.singleton("9"));
+
+        for (int i = 0; i < 10; i++) {
+            Message message = message(i)
+                .addAttributesEntry("SentTimestamp", "1000")
+                .addMessageAttributesEntry(
+                    "origin",
+                    new MessageAttributeValue().withDataType("String").withStringValue("test")
+                );
+            policy.forward(source, message, new IllegalStateException("broken"));
+        }
+
+        ArgumentCaptor<List<SendMessageBatchRequestEntry>> captor = ArgumentCaptor.forClass(List.class);
+        verify(deadLetterQueue).sendMessageBatch(captor.capture());
+        verify(deadLetterQueue).isFifo();
+
+        SendMessageBatchRequestEntry entry = captor.getValue().get(0);
+        Map<String, MessageAttributeValue> attributes = entry.getMessageAttributes();
+        assertEquals(10, captor.getValue().size());
+        assertEquals("body0", entry.getMessageBody());
+        JsonObject deadLetter = JsonParser
+            .parseString(attributes.get(PoisonMessagePolicy.DEAD_LETTER).getStringValue())
+            .getAsJsonObject();
+        assertEquals(2, attributes.size());
+        assertEquals(IllegalStateException.class.getName(), deadLetter.get(PoisonMessagePolicy.REASON).getAsString());
+        assertEquals("broken", deadLetter.get(PoisonMessagePolicy.ERROR).getAsString());
+        assertEquals("queueUrl1", deadLetter.get(PoisonMessagePolicy.SOURCE_QUEUE).getAsString());
+        assertEquals(1000, deadLetter.get(PoisonMessagePolicy.SENT_TIMESTAMP).getAsLong());
+        assertEquals("test", attributes.get("origin").getStringValue());
+
+        List<String> forwarded = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            forwarded.add("receiptHandle" + i);
+        }
+        verify(source).deleteMessages(forwarded);
+    }
+
+    private static Message message(int index) {
+        return new Message()
+            .withMessageId("messageId" + index)
+            .withReceiptHandle("receiptHandle" + index)
+            .withBody("body" + index);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.message;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class DeduplicationIdGeneratorTest {
+
+    @Test
+    public void shouldHashBusinessKey() {
+        DeduplicationIdGenerator<TestDO> generator = DeduplicationIdGenerator.businessKey(TestDO::getContent);
+
+        String id = generator.generate(message("order-1", "{\"v\":1}"));
+
+        assertEquals(32, id.length());
+        assertTrue(id.matches("[0-9a-f]+"));
+        assertEquals(id, generator.generate(message("order-1", "{\"v\":2}")));
+        assertNotEquals(id, generator.generate(message("order-2", "{\"v\":1}")));
+    }
+
+    @Test
+    public void shouldHashContent() {
+        DeduplicationIdGenerator<TestDO> generator = DeduplicationIdGenerator.contentHash();
+
+        assertEquals(generator.generate(message("a", "body")), generator.generate(message("b", "body")));
+        assertNotEquals(generator.generate(message("a", "body")), generator.generate(message("a", "body2")));
+    }
+
+    @Test
+    public void shouldUseSuppliedId() {
+        DeduplicationIdGenerator<TestDO> generator = DeduplicationIdGenerator.supplied(TestDO::getContent);
+
+        assertEquals("order-1", generator.generate(message("order-1", "body")));
+    }
+
+    @Test
+    public void shouldNotCollideOnSimilarKeys() {
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            ids.add(FastHash.hash("order-" + i));
+        }
+        ids.add(FastHash.hash(""));
+
+        assertEquals(100_001, ids.size());
+    }
+
+    private static SQSMessage<TestDO> message(String key, String plainContent) {
+        return SQSMessage.<TestDO>builder().content(new TestDO(key)).plainContent(plainContent).build();
+    }
+}
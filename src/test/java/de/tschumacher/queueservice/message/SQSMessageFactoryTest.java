@@ -16,7 +16,9 @@ package de.tschumacher.queueservice.message;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
 import de.tschumacher.queueservice.message.coder.SQSCoder;
+import java.util.Collections;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -62,7 +64,14 @@ public class SQSMessageFactoryTest {
             .withMessageId("messageId1")
             .withBody("body1")
             .withReceiptHandle("handle1")
-            .addAttributesEntry("MessageGroupId", "messageGroupId1");
+            .addAttributesEntry("MessageGroupId", "messageGroupId1")
+            .addAttributesEntry("SentTimestamp", "1000")
+            .addAttributesEntry("ApproximateFirstReceiveTimestamp", "2000")
+            .addAttributesEntry("ApproximateReceiveCount", "3")
+            .addMessageAttributesEntry(
+                "version",
+                new MessageAttributeValue().withDataType("Number").withStringValue("2")
+            );
 
         Mockito.when(this.coder.encode("body1")).thenReturn(testMessage);
 
@@ -77,9 +86,25 @@ public class SQSMessageFactoryTest {
                 .messageId("messageId1")
                 .receiptHandle("handle1")
                 .messageGroupId("messageGroupId1")
+                .sentTimestamp(1000L)
+                .approximateFirstReceiveTimestamp(2000L)
+                .approximateReceiveCount(3)
+                .messageAttributes(Collections.singletonMap("version", MessageAttribute.number(2)))
                 .build()
         );
 
         Mockito.verify(this.coder).encode(message.getBody());
     }
+
+    @Test
+    public void shouldCreateMessagesWithMutableAttributes() {
+        final TestDO message = new TestDO("test1");
+        Mockito.when(this.coder.decode(message)).thenReturn("plainContent1");
+
+        SQSMessage<TestDO> factoryMessage = factory.createSQSMessage(message);
+        factoryMessage.getMessageAttributes().put("type", MessageAttribute.string("order"));
+
+        assertEquals(MessageAttribute.string("order"), factoryMessage.getMessageAttribute("type"));
+        Mockito.verify(this.coder).decode(message);
+    }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    public void shouldReportPercentilesWithinBucketPrecision() {
+        for (int value = 1; value <= 100_000; value++) {
+            histogram.record(value);
+        }
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        assertEquals(100_000, snapshot.getCount());
+        assertEquals(50_000, snapshot.getP50(), 50_000 * 0.04);
+        assertEquals(99_000, snapshot.getP99(), 99_000 * 0.04);
+        assertEquals(99_900, snapshot.getP999(), 99_900 * 0.04);
+        assertTrue(snapshot.getMax() >= 100_000);
+    }
+
+    @Test
+    public void shouldRecordSmallValuesExactly() {
+        histogram.record(0);
+        histogram.record(7);
+        histogram.record(31);
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        assertEquals(0, snapshot.getPercentile(1));
+        assertEquals(7, snapshot.getP50());
+        assertEquals(31, snapshot.getMax());
+    }
+
+    @Test
+    public void shouldResetOnSnapshot() {
+        histogram.record(10);
+        histogram.record(Long.MAX_VALUE);
+
+        HistogramSnapshot first = histogram.snapshotAndReset();
+        histogram.record(20);
+        HistogramSnapshot second = histogram.snapshotAndReset();
+
+        assertEquals(2, first.getCount());
+        assertEquals(Long.MAX_VALUE, first.getMax());
+        assertEquals(1, second.getCount());
+        assertEquals(20, second.getMax());
+        assertEquals(0, histogram.snapshot().getCount());
+    }
+
+    @Test
+    public void shouldMapEveryBucketBoundaryToItsOwnBucket() {
+        for (int index = 0; index < LatencyHistogram.BUCKET_COUNT; index++) {
+            long highest = LatencyHistogram.highestValueOf(index);
+            assertEquals(index, LatencyHistogram.indexOf(highest));
+            if (index + 1 < LatencyHistogram.BUCKET_COUNT) {
+                assertEquals(index + 1, LatencyHistogram.indexOf(highest + 1));
+            }
+        }
+    }
+}
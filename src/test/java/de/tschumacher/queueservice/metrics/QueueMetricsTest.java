@@ -0,0 +1,48 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import de.tschumacher.queueservice.sqs.QueueDepth;
+import org.junit.jupiter.api.Test;
+
+public class QueueMetricsTest {
+    private final QueueMetrics metrics = new QueueMetrics();
+
+    @Test
+    public void shouldEstimateDrainTimeFromShrinkingBacklog() {
+        metrics.queueDepthSampled(0, 1000, 0, 0);
+        QueueDepth depth = metrics.queueDepthSampled(10_000, 700, 0, 0);
+
+        assertEquals(9, depth.getDrainRatePerSecond(), 0.001);
+        assertEquals(700 / 9.0, depth.getEstimatedDrainSeconds(), 0.001);
+    }
+
+    @Test
+    public void shouldReportInfiniteDrainTimeForGrowingBacklog() {
+        metrics.queueDepthSampled(0, 100, 0, 0);
+        QueueDepth depth = metrics.queueDepthSampled(10_000, 200, 0, 10);
+
+        assertEquals(210, depth.getBacklog());
+        assertEquals(Double.POSITIVE_INFINITY, depth.getEstimatedDrainSeconds());
+    }
+
+    @Test
+    public void shouldReportZeroDrainTimeForEmptyQueue() {
+        QueueDepth depth = metrics.queueDepthSampled(0, 0, 5, 0);
+
+        assertEquals(0, depth.getEstimatedDrainSeconds());
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.multiqueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.amazonaws.services.sqs.model.Message;
+import de.tschumacher.queueservice.MessageReceiver;
+import de.tschumacher.queueservice.message.TestDO;
+import de.tschumacher.queueservice.metrics.QueueMetrics;
+import de.tschumacher.queueservice.sqs.ReceiveBackoff;
+import de.tschumacher.queueservice.sqs.SQSQueue;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+public class MultiQueueMessageReceiverServiceTest {
+    @Mock
+    private SQSQueue queue;
+
+    @Mock
+    private MessageReceiver<TestDO> messageReceiver;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        Mockito.when(this.messageReceiver.tryStartPoll()).thenReturn(true);
+        Mockito.when(this.queue.getReceiveBackoff()).thenReturn(new ReceiveBackoff(new QueueMetrics()));
+    }
+
+    @Test
+    public void shouldDispatchMessagesAndDrainOnStop() {
+        Message message1 = new Message().withMessageId("messageId1").withReceiptHandle("receiptHandle1");
+        Message message2 = new Message().withMessageId("messageId2").withReceiptHandle("receiptHandle2");
+        Mockito
+            .when(this.queue.receiveMessages(1))
+            .thenReturn(Arrays.asList(message1, message2), Collections.emptyList());
+        MultiQueueMessageReceiverService service = service(2, 2);
+
+        service.start();
+
+        Mockito.verify(this.messageReceiver, Mockito.timeout(1000)).handleMessage(this.queue, message1);
+        Mockito.verify(this.messageReceiver, Mockito.timeout(1000)).handleMessage(this.queue, message2);
+        Mockito.verify(this.messageReceiver, Mockito.timeout(1000).atLeast(2)).pollCompleted();
+        assertTrue(service.stop(5, TimeUnit.SECONDS));
+
+        Mockito.verify(this.queue, Mockito.never()).releaseMessages(Mockito.anyList());
+    }
+
+    @Test
+    public void shouldHandleMessagesOfOneGroupInOrder() {
+        List<Message> messages = Arrays.asList(
+            groupMessage("messageId1", "group1"),
+            groupMessage("messageId2", "group1"),
+            groupMessage("messageId3", "group1")
+        );
+        List<String> handled = new CopyOnWriteArrayList<>();
+        Mockito.when(this.queue.receiveMessages(1)).thenReturn(messages, Collections.emptyList());
+        Mockito
+            .doAnswer(
+                invocation -> {
+                    Message message = invocation.getArgument(1);
+                    if (message.getMessageId().equals("messageId1")) {
+                        Thread.sleep(50);
+                    }
+                    handled.add(message.getMessageId());
+                    return null;
+                }
+            )
+            .when(this.messageReceiver)
+            .handleMessage(Mockito.eq(this.queue), Mockito.any(Message.class));
+        MultiQueueMessageReceiverService service = service(1, 4);
+
+        service.start();
+
+        Mockito
+            .verify(this.messageReceiver, Mockito.timeout(1000).times(3))
+            .handleMessage(Mockito.eq(this.queue), Mockito.any(Message.class));
+        assertTrue(service.stop(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("messageId1", "messageId2", "messageId3"), handled);
+    }
+
+    @Test
+    public void shouldReleaseQueuedMessagesWhenStopTimesOut() throws InterruptedException {
+        Message message1 = new Message().withMessageId("messageId1").withReceiptHandle("receiptHandle1");
+        Message message2 = new Message().withMessageId("messageId2").withReceiptHandle("receiptHandle2");
+        CountDownLatch handling = new CountDownLatch(1);
+        Mockito
+            .when(this.queue.receiveMessages(1))
+            .thenReturn(Arrays.asList(message1, message2), Collections.emptyList());
+        Mockito
+            .doAnswer(
+                invocation -> {
+                    handling.countDown();
+                    try {
+                        new CountDownLatch(1).await(10, TimeUnit.SECONDS);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                }
+            )
+            .when(this.messageReceiver)
+            .handleMessage(this.queue, message1);
+        MultiQueueMessageReceiverService service = service(1, 1);
+
+        service.start();
+
+        assertTrue(handling.await(1, TimeUnit.SECONDS));
+        assertFalse(service.stop(100, TimeUnit.MILLISECONDS));
+
+        Mockito.verify(this.queue).releaseMessages(Collections.singletonList("receiptHandle2"));
+        Mockito.verify(this.messageReceiver, Mockito.never()).handleMessage(this.queue, message2);
+    }
+
+    @Test
+    public void shouldRejectCoalescingReceivers() {
+        Mockito.when(this.messageReceiver.isCoalescing()).thenReturn(true);
+
+        assertThrows(IllegalArgumentException.class, () -> service(1, 1));
+    }
+
+    private MultiQueueMessageReceiverService service(int pollerCount, int handlerCount) {
+        MultiQueueMessageReceiverService service = new MultiQueueMessageReceiverService(
+            new WeightedFairQueueScheduler(10, 100),
+            pollerCount,
+            handlerCount
+        );
+        service.register(this.queue, this.messageReceiver, 1);
+        return service;
+    }
+
+    private static Message groupMessage(String messageId, String messageGroupId) {
+        return new Message()
+            .withMessageId(messageId)
+            .withReceiptHandle("receiptHandle-" + messageId)
+            .addAttributesEntry("MessageGroupId", messageGroupId);
+    }
+}
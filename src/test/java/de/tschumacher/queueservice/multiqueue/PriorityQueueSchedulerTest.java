@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.multiqueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import de.tschumacher.queueservice.MessageReceiver;
+import de.tschumacher.queueservice.sqs.SQSQueue;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class PriorityQueueSchedulerTest {
+    private PriorityQueueScheduler scheduler;
+    private QueueRegistration high;
+    private QueueRegistration normal;
+    private QueueRegistration bulk;
+
+    @Mock
+    private SQSQueue queue;
+
+    @Mock
+    private MessageReceiver<Object> receiver;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        this.scheduler = new PriorityQueueScheduler(0.1, 100, 1000);
+        this.high = new QueueRegistration(this.queue, this.receiver, 1);
+        this.normal = new QueueRegistration(this.queue, this.receiver, 1);
+        this.bulk = new QueueRegistration(this.queue, this.receiver, 1);
+        this.scheduler.register(this.high);
+        this.scheduler.register(this.normal);
+        this.scheduler.register(this.bulk);
+    }
+
+    @Test
+    public void shouldGuaranteeMinimumShareToLowerTiers() {
+        Map<QueueRegistration, Integer> polls = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            QueueRegistration next = this.scheduler.next(0);
+            polls.merge(next, 1, Integer::sum);
+            this.scheduler.completed(next, 10, 0);
+        }
+
+        assertEquals(800, polls.get(this.high), 10);
+        assertEquals(100, polls.get(this.normal), 10);
+        assertEquals(100, polls.get(this.bulk), 10);
+    }
+
+    @Test
+    public void shouldKeepPollingTopTierWhenMinSharesAddUpToEverything() {
+        PriorityQueueScheduler scheduler = new PriorityQueueScheduler(0.5, 100, 1000);
+        scheduler.register(this.high);
+        scheduler.register(this.normal);
+        scheduler.register(this.bulk);
+
+        Map<QueueRegistration, Integer> polls = new HashMap<>();
+        for (int i = 0; i < 900; i++) {
+            QueueRegistration next = scheduler.next(0);
+            polls.merge(next, 1, Integer::sum);
+            scheduler.completed(next, 10, 0);
+        }
+
+        assertEquals(300, polls.get(this.high), 10);
+        assertEquals(300, polls.get(this.normal), 10);
+        assertEquals(300, polls.get(this.bulk), 10);
+    }
+
+    @Test
+    public void shouldFallThroughToLowerTierWhenHigherTiersAreEmpty() {
+        this.scheduler.completed(this.high, 0, 0);
+        this.scheduler.completed(this.normal, 0, 0);
+
+        assertSame(this.bulk, this.scheduler.next(0));
+    }
+
+    @Test
+    public void shouldPreferNextTierWhenHighestIsEmpty() {
+        this.scheduler.completed(this.high, 0, 0);
+
+        assertSame(this.normal, this.scheduler.next(0));
+    }
+}
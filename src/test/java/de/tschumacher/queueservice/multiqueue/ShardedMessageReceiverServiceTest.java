@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.multiqueue;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.amazonaws.services.sqs.model.Message;
+import de.tschumacher.queueservice.MessageReceiver;
+import de.tschumacher.queueservice.message.TestDO;
+import de.tschumacher.queueservice.metrics.QueueMetrics;
+import de.tschumacher.queueservice.sqs.ReceiveBackoff;
+import de.tschumacher.queueservice.sqs.SQSQueue;
+import de.tschumacher.queueservice.sqs.ShardedSQSQueue;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+public class ShardedMessageReceiverServiceTest {
+    @Mock
+    private SQSQueue shard1;
+
+    @Mock
+    private SQSQueue shard2;
+
+    @Mock
+    private MessageReceiver<TestDO> messageReceiver;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        Mockito.when(this.messageReceiver.tryStartPoll()).thenReturn(true);
+        Mockito.when(this.shard1.getReceiveBackoff()).thenReturn(new ReceiveBackoff(new QueueMetrics()));
+        Mockito.when(this.shard2.getReceiveBackoff()).thenReturn(new ReceiveBackoff(new QueueMetrics()));
+    }
+
+    @Test
+    public void shouldConsumeEveryShard() {
+        Message message1 = new Message().withMessageId("messageId1").withReceiptHandle("receiptHandle1");
+        Message message2 = new Message().withMessageId("messageId2").withReceiptHandle("receiptHandle2");
+        Mockito.when(this.shard1.receiveMessages(1)).thenReturn(Collections.singletonList(message1));
+        Mockito.when(this.shard2.receiveMessages(1)).thenReturn(Collections.singletonList(message2));
+        ShardedMessageReceiverService<TestDO> service = service(2);
+
+        service.start();
+
+        Mockito.verify(this.messageReceiver, Mockito.timeout(1000).atLeastOnce()).handleMessage(this.shard1, message1);
+        Mockito.verify(this.messageReceiver, Mockito.timeout(1000).atLeastOnce()).handleMessage(this.shard2, message2);
+        assertTrue(service.stop(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldKeepConsumingBusyShardWhileOtherShardIsIdle() {
+        Message message1 = new Message().withMessageId("messageId1").withReceiptHandle("receiptHandle1");
+        Message message2 = new Message().withMessageId("messageId2").withReceiptHandle("receiptHandle2");
+        Message message3 = new Message().withMessageId("messageId3").withReceiptHandle("receiptHandle3");
+        Mockito.when(this.shard1.receiveMessages(1)).thenReturn(Collections.emptyList());
+        Mockito
+            .when(this.shard2.receiveMessages(1))
+            .thenReturn(
+                Collections.singletonList(message1),
+                Collections.singletonList(message2),
+                Collections.singletonList(message3),
+                Collections.emptyList()
+            );
+        ShardedMessageReceiverService<TestDO> service = service(1);
+
+        service.start();
+
+        for (Message message : Arrays.asList(message1, message2, message3)) {
+            Mockito.verify(this.messageReceiver, Mockito.timeout(1000)).handleMessage(this.shard2, message);
+        }
+        assertTrue(service.stop(5, TimeUnit.SECONDS));
+    }
+
+    private ShardedMessageReceiverService<TestDO> service(int pollerCount) {
+        return new ShardedMessageReceiverService<>(
+            new ShardedSQSQueue(Arrays.asList(this.shard1, this.shard2)),
+            this.messageReceiver,
+            pollerCount,
+            2
+        );
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.multiqueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import de.tschumacher.queueservice.MessageReceiver;
+import de.tschumacher.queueservice.sqs.SQSQueue;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class WeightedFairQueueSchedulerTest {
+    private WeightedFairQueueScheduler scheduler;
+
+    @Mock
+    private SQSQueue queue;
+
+    @Mock
+    private MessageReceiver<Object> receiver;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        this.scheduler = new WeightedFairQueueScheduler(100, 1000);
+    }
+
+    @Test
+    public void shouldScheduleByWeight() {
+        QueueRegistration heavy = new QueueRegistration(this.queue, this.receiver, 3);
+        QueueRegistration light = new QueueRegistration(this.queue, this.receiver, 1);
+        this.scheduler.register(heavy);
+        this.scheduler.register(light);
+
+        Map<QueueRegistration, Integer> polls = new HashMap<>();
+        for (int i = 0; i < 400; i++) {
+            QueueRegistration next = this.scheduler.next(0);
+            polls.merge(next, 1, Integer::sum);
+            this.scheduler.completed(next, 10, 0);
+        }
+
+        assertEquals(300, polls.get(heavy));
+        assertEquals(100, polls.get(light));
+    }
+
+    @Test
+    public void shouldBackOffEmptyQueues() {
+        QueueRegistration empty = new QueueRegistration(this.queue, this.receiver, 1);
+        this.scheduler.register(empty);
+
+        this.scheduler.completed(this.scheduler.next(0), 0, 0);
+
+        assertNull(this.scheduler.next(TimeUnit.MILLISECONDS.toNanos(50)));
+        assertEquals(
+            TimeUnit.MILLISECONDS.toNanos(50),
+            this.scheduler.nanosUntilEligible(TimeUnit.MILLISECONDS.toNanos(50))
+        );
+        assertSame(empty, this.scheduler.next(TimeUnit.MILLISECONDS.toNanos(100)));
+
+        this.scheduler.completed(empty, 0, TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertNull(this.scheduler.next(TimeUnit.MILLISECONDS.toNanos(250)));
+        assertSame(empty, this.scheduler.next(TimeUnit.MILLISECONDS.toNanos(300)));
+    }
+
+    @Test
+    public void shouldHandQueueToOnePollerAtATime() {
+        QueueRegistration registration = new QueueRegistration(this.queue, this.receiver, 1);
+        this.scheduler.register(registration);
+
+        assertSame(registration, this.scheduler.next(0));
+        assertNull(this.scheduler.next(0));
+        assertEquals(Long.MAX_VALUE, this.scheduler.nanosUntilEligible(0));
+
+        this.scheduler.completed(registration, 1, 0);
+
+        assertSame(registration, this.scheduler.next(0));
+    }
+
+    @Test
+    public void shouldNotLetIdleQueuesCatchUp() {
+        QueueRegistration busy = new QueueRegistration(this.queue, this.receiver, 1);
+        QueueRegistration idle = new QueueRegistration(this.queue, this.receiver, 1);
+        this.scheduler.register(busy);
+        this.scheduler.register(idle);
+
+        this.scheduler.completed(idle, 0, 0);
+        for (int i = 0; i < 50; i++) {
+            assertSame(busy, this.scheduler.next(0));
+            this.scheduler.completed(busy, 1, 0);
+        }
+
+        long later = TimeUnit.SECONDS.toNanos(1);
+        Map<QueueRegistration, Integer> polls = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            QueueRegistration next = this.scheduler.next(later);
+            polls.merge(next, 1, Integer::sum);
+            this.scheduler.completed(next, 1, later);
+        }
+
+        assertEquals(5, polls.get(busy));
+        assertEquals(5, polls.get(idle));
+    }
+}
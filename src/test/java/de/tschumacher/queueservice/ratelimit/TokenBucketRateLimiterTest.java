@@ -0,0 +1,85 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TokenBucketRateLimiterTest {
+    private AtomicLong clock;
+    private TokenBucketRateLimiter rateLimiter;
+
+    @BeforeEach
+    public void setUp() {
+        this.clock = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+        this.rateLimiter = new TokenBucketRateLimiter(10, 10, this.clock::get);
+    }
+
+    @Test
+    public void shouldAllowBurstUpToCapacity() {
+        assertTrue(this.rateLimiter.tryAcquire(10));
+        assertFalse(this.rateLimiter.tryAcquire(1));
+    }
+
+    @Test
+    public void shouldCountBatchEntries() {
+        assertTrue(this.rateLimiter.tryAcquire(6));
+        assertFalse(this.rateLimiter.tryAcquire(6));
+        assertTrue(this.rateLimiter.tryAcquire(4));
+    }
+
+    @Test
+    public void shouldRefillOverTime() {
+        assertTrue(this.rateLimiter.tryAcquire(10));
+
+        this.clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(300));
+
+        assertTrue(this.rateLimiter.tryAcquire(3));
+        assertFalse(this.rateLimiter.tryAcquire(1));
+    }
+
+    @Test
+    public void shouldNotRefillBeyondCapacity() {
+        this.clock.addAndGet(TimeUnit.SECONDS.toNanos(60));
+
+        assertTrue(this.rateLimiter.tryAcquire(10));
+        assertFalse(this.rateLimiter.tryAcquire(1));
+    }
+
+    @Test
+    public void shouldWaitAfterCharge() {
+        this.rateLimiter.charge(15);
+
+        assertFalse(this.rateLimiter.tryAcquire(1));
+
+        this.clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+
+        assertFalse(this.rateLimiter.tryAcquire(1));
+
+        this.clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertTrue(this.rateLimiter.tryAcquire(1));
+    }
+
+    @Test
+    public void shouldReturnUnlimitedWithoutRate() {
+        assertSame(RateLimiter.UNLIMITED, RateLimiter.create(0));
+    }
+}
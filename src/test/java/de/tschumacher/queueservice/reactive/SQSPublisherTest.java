@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.reactive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+import com.amazonaws.services.sqs.model.Message;
+import de.tschumacher.queueservice.message.SQSMessage;
+import de.tschumacher.queueservice.message.SQSMessageFactory;
+import de.tschumacher.queueservice.message.TestDO;
+import de.tschumacher.queueservice.sqs.SQSQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+public class SQSPublisherTest {
+    private SQSPublisher<TestDO> publisher;
+
+    @Mock
+    private SQSQueue queue;
+
+    @Mock
+    private SQSMessageFactory<TestDO> factory;
+
+    private final RecordingSubscriber subscriber = new RecordingSubscriber();
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        publisher = new SQSPublisher<>(queue, factory);
+    }
+
+    @AfterEach
+    public void shutDown() {
+        verifyNoMoreInteractions(queue);
+        verifyNoMoreInteractions(factory);
+    }
+
+    @Test
+    public void shouldReceiveOnlyRequestedMessages() {
+        Message message1 = new Message().withMessageId("messageId1").withReceiptHandle("receiptHandle1");
+        Message message2 = new Message().withMessageId("messageId2").withReceiptHandle("receiptHandle2");
+        when(queue.receiveMessagesAsync(2))
+            .thenReturn(CompletableFuture.completedFuture(Arrays.asList(message1, message2)));
+        when(factory.createSQSMessage(any(Message.class)))
+            .thenAnswer(
+                invocation ->
+                    SQSMessage
+                        .<TestDO>builder()
+                        .messageId(invocation.<Message>getArgument(0).getMessageId())
+                        .receiptHandle(invocation.<Message>getArgument(0).getReceiptHandle())
+                        .build()
+            );
+
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(2);
+
+        assertEquals(2, subscriber.received.size());
+        subscriber.received.get(0).ack();
+        subscriber.received.get(1).nack();
+
+        verify(queue).receiveMessagesAsync(2);
+        verify(factory).createSQSMessage(message1);
+        verify(factory).createSQSMessage(message2);
+        verify(queue).deleteMessage("receiptHandle1");
+        verify(queue).retryMessage("receiptHandle2");
+    }
+
+    @Test
+    public void shouldReleaseMessagesReceivedAfterCancel() {
+        CompletableFuture<List<Message>> pending = new CompletableFuture<>();
+        when(queue.receiveMessagesAsync(3)).thenReturn(pending);
+
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(3);
+        subscriber.subscription.cancel();
+        pending.complete(Collections.singletonList(new Message().withReceiptHandle("receiptHandle1")));
+
+        assertEquals(0, subscriber.received.size());
+
+        verify(queue).receiveMessagesAsync(3);
+        verify(queue).releaseMessages(Collections.singletonList("receiptHandle1"));
+    }
+
+    @Test
+    public void shouldSignalErrorForNonPositiveRequest() {
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(0);
+
+        assertEquals(IllegalArgumentException.class, subscriber.error.getClass());
+    }
+
+    @Test
+    public void shouldSignalErrorWhenReceiveThrows() {
+        IllegalStateException failure = new IllegalStateException("failed");
+        when(queue.receiveMessagesAsync(1)).thenThrow(failure);
+
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(1);
+        subscriber.subscription.request(1);
+
+        assertEquals(failure, subscriber.error);
+
+        verify(queue).receiveMessagesAsync(1);
+    }
+
+    private static class RecordingSubscriber implements Subscriber<SQSMessage<TestDO>> {
+        private final List<SQSMessage<TestDO>> received = new ArrayList<>();
+        private Subscription subscription;
+        private Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(SQSMessage<TestDO> message) {
+            received.add(message);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {}
+    }
+}
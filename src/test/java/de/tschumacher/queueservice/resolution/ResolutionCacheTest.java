@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.resolution;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ResolutionCacheTest {
+    private final Object scope = new Object();
+    private AtomicInteger loads;
+    private ResolutionCache cache;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    public void setUp() {
+        this.loads = new AtomicInteger();
+        this.cache = new ResolutionCache(null);
+    }
+
+    @Test
+    public void shouldResolveOnce() {
+        String first = ResolutionCache.join(this.cache.resolve(this.scope, "key1", this::load));
+        String second = ResolutionCache.join(this.cache.resolve(this.scope, "key1", this::load));
+
+        assertEquals("value1", first);
+        assertEquals("value1", second);
+        assertEquals(1, this.loads.get());
+    }
+
+    @Test
+    public void shouldResolvePerScope() {
+        ResolutionCache.join(this.cache.resolve(this.scope, "key1", this::load));
+        ResolutionCache.join(this.cache.resolve(new Object(), "key1", this::load));
+
+        assertEquals(2, this.loads.get());
+    }
+
+    @Test
+    public void shouldNotCacheFailures() {
+        assertThrows(
+            IllegalStateException.class,
+            () ->
+                ResolutionCache.join(
+                    this.cache.resolve(
+                        this.scope,
+                        "key1",
+                        () -> {
+                            throw new IllegalStateException("failed");
+                        }
+                    )
+                )
+        );
+
+        assertEquals("value1", ResolutionCache.join(this.cache.resolve(this.scope, "key1", this::load)));
+    }
+
+    @Test
+    public void shouldApplyOnlyChangedValues() {
+        assertTrue(this.cache.applyIfChanged(this.scope, "key1", "value1", this.loads::incrementAndGet));
+        assertFalse(this.cache.applyIfChanged(this.scope, "key1", "value1", this.loads::incrementAndGet));
+        assertTrue(this.cache.applyIfChanged(this.scope, "key1", "value2", this.loads::incrementAndGet));
+
+        assertEquals(2, this.loads.get());
+    }
+
+    @Test
+    public void shouldPersistToFile() {
+        Path file = this.tempDir.resolve("resolution.properties");
+        ResolutionCache fileCache = new ResolutionCache(new ResolutionFileStore(file));
+
+        ResolutionCache.join(fileCache.resolve(this.scope, "key1", this::load));
+
+        ResolutionCache restartedCache = new ResolutionCache(new ResolutionFileStore(file));
+        String value = ResolutionCache.join(restartedCache.resolve(new Object(), "key1", this::load));
+
+        assertEquals("value1", value);
+        assertEquals(1, this.loads.get());
+    }
+
+    @Test
+    public void shouldApplyAgainAfterRestart() {
+        Path file = this.tempDir.resolve("resolution.properties");
+        ResolutionCache fileCache = new ResolutionCache(new ResolutionFileStore(file));
+
+        assertTrue(fileCache.applyIfChanged(this.scope, "key1", "value1", this.loads::incrementAndGet));
+
+        ResolutionCache restartedCache = new ResolutionCache(new ResolutionFileStore(file));
+        assertTrue(restartedCache.applyIfChanged(this.scope, "key1", "value1", this.loads::incrementAndGet));
+
+        assertEquals(2, this.loads.get());
+    }
+
+    @Test
+    public void shouldNotPersistTransientValues() {
+        Path file = this.tempDir.resolve("resolution.properties");
+        ResolutionCache fileCache = new ResolutionCache(new ResolutionFileStore(file));
+
+        ResolutionCache.join(fileCache.resolve(this.scope, "key1", this::load, false));
+
+        ResolutionCache restartedCache = new ResolutionCache(new ResolutionFileStore(file));
+        String value = ResolutionCache.join(restartedCache.resolve(this.scope, "key1", this::load, false));
+
+        assertEquals("value2", value);
+    }
+
+    @Test
+    public void shouldInvalidateByPrefix() {
+        Path file = this.tempDir.resolve("resolution.properties");
+        ResolutionCache fileCache = new ResolutionCache(new ResolutionFileStore(file));
+        ResolutionCache.join(fileCache.resolve(this.scope, "topic1|key1", this::load));
+        ResolutionCache.join(fileCache.resolve(this.scope, "topic2|key1", this::load));
+
+        fileCache.invalidateAll(this.scope, "topic1|");
+
+        assertEquals("value3", ResolutionCache.join(fileCache.resolve(this.scope, "topic1|key1", this::load)));
+        assertEquals("value2", ResolutionCache.join(fileCache.resolve(this.scope, "topic2|key1", this::load)));
+        ResolutionCache restartedCache = new ResolutionCache(new ResolutionFileStore(file));
+        assertEquals("value3", ResolutionCache.join(restartedCache.resolve(this.scope, "topic1|key1", this::load)));
+    }
+
+    @Test
+    public void shouldScopeByAccountAndRegion() {
+        assertEquals("key1@eu-central-1", ResolutionCache.clientScope("key1", "eu-central-1"));
+        assertEquals("default@eu-west-1", ResolutionCache.clientScope(null, "eu-west-1"));
+    }
+
+    private String load() {
+        return "value" + this.loads.incrementAndGet();
+    }
+}
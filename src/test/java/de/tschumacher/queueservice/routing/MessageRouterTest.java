@@ -0,0 +1,88 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.routing;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import de.tschumacher.queueservice.message.MessageHandler;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class MessageRouterTest {
+
+    @SuppressWarnings("unchecked")
+    private final MessageHandler<String> first = Mockito.mock(MessageHandler.class);
+
+    @SuppressWarnings("unchecked")
+    private final MessageHandler<String> second = Mockito.mock(MessageHandler.class);
+
+    @Test
+    public void shouldKeepFirstMatchWithinCompiledRoutes() {
+        MessageRouter<String> router = MessageRouter
+            .<String>builder()
+            .route(MessageMatcher.attributeIn("type", "a", "b"), first)
+            .route(MessageMatcher.attributeEquals("type", "b"), second)
+            .route(MessageMatcher.attributeEquals("type", "c"), second)
+            .build();
+
+        assertSame(first, router.route(message("type", "a")).getHandler());
+        assertSame(first, router.route(message("type", "b")).getHandler());
+        assertSame(second, router.route(message("type", "c")).getHandler());
+        assertNull(router.route(message("type", "d")));
+        assertNull(router.route(new Message()));
+    }
+
+    @Test
+    public void shouldKeepOrderAcrossDifferentMatchers() {
+        MessageRouter<String> router = MessageRouter
+            .<String>builder()
+            .drop(MessageMatcher.attributePrefix("type", "internal."))
+            .route(MessageMatcher.attributeEquals("type", "internal.audit"), first)
+            .route(MessageMatcher.systemAttributeEquals("MessageGroupId", "tenant-1"), second)
+            .otherwise(first)
+            .build();
+
+        assertTrue(router.route(message("type", "internal.audit")).isDrop());
+        assertSame(
+            second,
+            router.route(new Message().addAttributesEntry("MessageGroupId", "tenant-1")).getHandler()
+        );
+        assertSame(first, router.route(message("type", "public")).getHandler());
+    }
+
+    @Test
+    public void shouldDropUnmatched() {
+        MessageRouter<String> router = MessageRouter
+            .<String>builder()
+            .route(MessageMatcher.attributeExists("type").and(MessageMatcher.attributeEquals("version", "2")), first)
+            .dropUnmatched()
+            .build();
+
+        Message versioned = message("type", "a").addMessageAttributesEntry("version", value("2"));
+        assertSame(first, router.route(versioned).getHandler());
+        assertTrue(router.route(message("type", "a")).isDrop());
+    }
+
+    private static Message message(String name, String value) {
+        return new Message().addMessageAttributesEntry(name, value(value));
+    }
+
+    private static MessageAttributeValue value(String value) {
+        return new MessageAttributeValue().withDataType("String").withStringValue(value);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.sns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class FilterPolicyTest {
+
+    @Test
+    public void shouldRenderConditionsSortedByAttribute() {
+        FilterPolicy policy = FilterPolicy
+            .builder()
+            .numericBetween("amount", 0, 100)
+            .anyOf("type", "order.created")
+            .anythingBut("region", "test")
+            .exists("traceId")
+            .anyOf("type", "order.cancelled")
+            .build();
+
+        assertEquals(
+            "{\"amount\":[{\"numeric\":[\">=\",0,\"<\",100]}]," +
+            "\"region\":[{\"anything-but\":[\"test\"]}]," +
+            "\"traceId\":[{\"exists\":true}]," +
+            "\"type\":[\"order.created\",\"order.cancelled\"]}",
+            policy.toJson()
+        );
+    }
+
+    @Test
+    public void shouldMatchAllWithoutConditions() {
+        assertEquals("{}", FilterPolicy.builder().build().toJson());
+        assertEquals(FilterPolicy.matchAll(), FilterPolicy.builder().build());
+    }
+}
@@ -21,6 +21,7 @@ import com.amazonaws.services.sns.model.CreateTopicRequest;
 import com.amazonaws.services.sns.model.CreateTopicResult;
 import com.amazonaws.services.sns.model.PublishRequest;
 import com.amazonaws.services.sns.model.SubscribeRequest;
+import com.amazonaws.services.sns.model.SubscribeResult;
 import de.tschumacher.queueservice.message.SQSMessage;
 import de.tschumacher.queueservice.message.TestDO;
 import org.junit.jupiter.api.AfterEach;
@@ -59,6 +60,7 @@ public class SNSQueueFifoTest {
             .thenReturn(new CreateTopicResult().withTopicArn(topicArn));
 
         this.snsQueue = new SNSQueue(this.sns, configuration);
+        this.snsQueue.getTopicArn();
     }
 
     @AfterEach
@@ -79,6 +81,7 @@ public class SNSQueueFifoTest {
             .<TestDO>builder()
             .plainContent("content1")
             .messageGroupId("messageGroupId1")
+            .messageDeduplicationId("deduplicationId1")
             .build();
 
         this.snsQueue.sendMessage(sqsMessage);
@@ -90,6 +93,7 @@ public class SNSQueueFifoTest {
                         .withMessage("content1")
                         .withTopicArn(this.topicArn)
                         .withMessageGroupId("messageGroupId1")
+                        .withMessageDeduplicationId("deduplicationId1")
                 ),
                 any()
             );
@@ -98,17 +102,20 @@ public class SNSQueueFifoTest {
     @Test
     public void subscribeSQSQueueTest() {
         final String queueArn = "queueArn1";
-
+        SubscribeRequest subscribeRequest = new SubscribeRequest()
+            .withTopicArn(topicArn)
+            .withEndpoint(queueArn)
+            .withProtocol("sqs")
+            .addAttributesEntry("RawMessageDelivery", "true");
+        when(this.sns.subscribe(subscribeRequest))
+            .thenReturn(new SubscribeResult().withSubscriptionArn("subscriptionArn1"));
+
+        final String subscriptionArn = this.snsQueue.subscribeSQSQueue(queueArn);
         this.snsQueue.subscribeSQSQueue(queueArn);
 
-        verify(this.sns)
-            .subscribe(
-                new SubscribeRequest()
-                    .withTopicArn(topicArn)
-                    .withEndpoint(queueArn)
-                    .withProtocol("sqs")
-                    .addAttributesEntry("RawMessageDelivery", "true")
-            );
+        assertEquals("subscriptionArn1", subscriptionArn);
+
+        verify(this.sns).subscribe(subscribeRequest);
     }
 
     @Test
@@ -19,10 +19,15 @@ import static org.mockito.Mockito.*;
 import com.amazonaws.services.sns.AmazonSNSAsync;
 import com.amazonaws.services.sns.model.CreateTopicRequest;
 import com.amazonaws.services.sns.model.CreateTopicResult;
+import com.amazonaws.services.sns.model.MessageAttributeValue;
 import com.amazonaws.services.sns.model.PublishRequest;
+import com.amazonaws.services.sns.model.SetSubscriptionAttributesRequest;
 import com.amazonaws.services.sns.model.SubscribeRequest;
+import com.amazonaws.services.sns.model.SubscribeResult;
+import de.tschumacher.queueservice.message.MessageAttribute;
 import de.tschumacher.queueservice.message.SQSMessage;
 import de.tschumacher.queueservice.message.TestDO;
+import java.util.Collections;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -52,6 +57,7 @@ public class SNSQueueStandardTest {
             .thenReturn(new CreateTopicResult().withTopicArn(topicArn));
 
         this.snsQueue = new SNSQueue(this.sns, configuration);
+        this.snsQueue.getTopicArn();
     }
 
     @AfterEach
@@ -62,30 +68,85 @@ public class SNSQueueStandardTest {
 
     @Test
     public void sendMessageTest() {
-        SQSMessage<TestDO> sqsMessage = SQSMessage.<TestDO>builder().plainContent("content1").build();
+        SQSMessage<TestDO> sqsMessage = SQSMessage
+            .<TestDO>builder()
+            .plainContent("content1")
+            .messageAttributes(Collections.singletonMap("type", MessageAttribute.string("order")))
+            .build();
 
         this.snsQueue.sendMessage(sqsMessage);
 
         verify(this.sns)
-            .publishAsync(eq(new PublishRequest().withMessage("content1").withTopicArn(this.topicArn)), any());
+            .publishAsync(
+                eq(
+                    new PublishRequest()
+                        .withMessage("content1")
+                        .withTopicArn(this.topicArn)
+                        .addMessageAttributesEntry(
+                            "type",
+                            new MessageAttributeValue().withDataType("String").withStringValue("order")
+                        )
+                ),
+                any()
+            );
     }
 
     @Test
-    public void subscribeSQSQueueTest() {
+    public void shouldApplyFilterPolicyOnlyWhenChanged() {
         final String queueArn = "queueArn1";
+        when(this.sns.subscribe(any(SubscribeRequest.class)))
+            .thenReturn(new SubscribeResult().withSubscriptionArn("subscriptionArn1"));
+        FilterPolicy orders = FilterPolicy.builder().anyOf("type", "order.created", "order.cancelled").build();
+        FilterPolicy invoices = FilterPolicy.builder().prefix("type", "invoice.").build();
 
-        this.snsQueue.subscribeSQSQueue(queueArn);
+        this.snsQueue.subscribeSQSQueue(queueArn, orders);
+        this.snsQueue.subscribeSQSQueue(queueArn, orders);
+        this.snsQueue.subscribeSQSQueue(queueArn, invoices);
+        this.snsQueue.subscribeSQSQueue(queueArn, null);
 
+        verify(this.sns).subscribe(any(SubscribeRequest.class));
+        verify(this.sns)
+            .setSubscriptionAttributes(
+                new SetSubscriptionAttributesRequest()
+                    .withSubscriptionArn("subscriptionArn1")
+                    .withAttributeName("FilterPolicy")
+                    .withAttributeValue("{\"type\":[\"order.created\",\"order.cancelled\"]}")
+            );
+        verify(this.sns)
+            .setSubscriptionAttributes(
+                new SetSubscriptionAttributesRequest()
+                    .withSubscriptionArn("subscriptionArn1")
+                    .withAttributeName("FilterPolicy")
+                    .withAttributeValue("{\"type\":[{\"prefix\":\"invoice.\"}]}")
+            );
         verify(this.sns)
-            .subscribe(
-                new SubscribeRequest()
-                    .withTopicArn(topicArn)
-                    .withEndpoint(queueArn)
-                    .withProtocol("sqs")
-                    .addAttributesEntry("RawMessageDelivery", "true")
+            .setSubscriptionAttributes(
+                new SetSubscriptionAttributesRequest()
+                    .withSubscriptionArn("subscriptionArn1")
+                    .withAttributeName("FilterPolicy")
+                    .withAttributeValue("{}")
             );
     }
 
+    @Test
+    public void subscribeSQSQueueTest() {
+        final String queueArn = "queueArn1";
+        SubscribeRequest subscribeRequest = new SubscribeRequest()
+            .withTopicArn(topicArn)
+            .withEndpoint(queueArn)
+            .withProtocol("sqs")
+            .addAttributesEntry("RawMessageDelivery", "true");
+        when(this.sns.subscribe(subscribeRequest))
+            .thenReturn(new SubscribeResult().withSubscriptionArn("subscriptionArn1"));
+
+        final String subscriptionArn = this.snsQueue.subscribeSQSQueue(queueArn);
+        this.snsQueue.subscribeSQSQueue(queueArn);
+
+        assertEquals("subscriptionArn1", subscriptionArn);
+
+        verify(this.sns).subscribe(subscribeRequest);
+    }
+
     @Test
     public void getTopicArnTest() {
         final String resultTopicArn = this.snsQueue.getTopicArn();
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.sqs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveReceiveTunerTest {
+    private AdaptiveReceiveTuner tuner;
+
+    @BeforeEach
+    public void setUp() {
+        this.tuner = new AdaptiveReceiveTuner(1, 1, 20);
+    }
+
+    @Test
+    public void shouldStartWithConfiguredBatchAndLongWait() {
+        assertEquals(1, this.tuner.getMaxNumberOfMessages());
+        assertEquals(20, this.tuner.getWaitTimeSeconds());
+        assertEquals(5, this.tuner.getActivePollers(5));
+    }
+
+    @Test
+    public void shouldGrowToFullBatchesWhenBusy() {
+        this.tuner.record(1, 1);
+        this.tuner.record(2, 2);
+        this.tuner.record(4, 4);
+        this.tuner.record(8, 8);
+
+        assertEquals(10, this.tuner.getMaxNumberOfMessages());
+        assertEquals(1, this.tuner.getWaitTimeSeconds());
+    }
+
+    @Test
+    public void shouldKeepBatchSizeOnPartialBatches() {
+        this.tuner.record(1, 1);
+        this.tuner.record(2, 1);
+
+        assertEquals(2, this.tuner.getMaxNumberOfMessages());
+    }
+
+    @Test
+    public void shouldWaitLongerAndReducePollersWhenIdle() {
+        this.tuner.record(1, 1);
+        this.tuner.record(2, 0);
+
+        assertEquals(1, this.tuner.getMaxNumberOfMessages());
+        assertEquals(20, this.tuner.getWaitTimeSeconds());
+        assertEquals(2, this.tuner.getActivePollers(5));
+
+        this.tuner.record(1, 0);
+        this.tuner.record(1, 0);
+
+        assertEquals(1, this.tuner.getActivePollers(5));
+
+        this.tuner.record(1, 1);
+
+        assertEquals(5, this.tuner.getActivePollers(5));
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.sqs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.amazonaws.services.sqs.model.Message;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class MessageGroupsTest {
+
+    @Test
+    public void shouldKeepMessagesOfOneGroupTogetherInOrder() {
+        Message a1 = message("1", "a");
+        Message b1 = message("2", "b");
+        Message a2 = message("3", "a");
+        Message standalone = message("4", null);
+        Message b2 = message("5", "b");
+
+        List<List<Message>> groups = MessageGroups.split(Arrays.asList(a1, b1, a2, standalone, b2));
+
+        assertEquals(3, groups.size());
+        assertEquals(Arrays.asList(a1, a2), groups.get(0));
+        assertEquals(Arrays.asList(b1, b2), groups.get(1));
+        assertEquals(Arrays.asList(standalone), groups.get(2));
+    }
+
+    @Test
+    public void shouldHandleMessagesWithoutGroupSeparately() {
+        Message first = message("1", null);
+        Message second = message("2", null);
+
+        List<List<Message>> groups = MessageGroups.split(Arrays.asList(first, second));
+
+        assertEquals(2, groups.size());
+    }
+
+    private static Message message(String id, String groupId) {
+        Message message = new Message().withMessageId(id);
+        if (groupId != null) {
+            message.addAttributesEntry("MessageGroupId", groupId);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.sqs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import de.tschumacher.queueservice.metrics.QueueMetrics;
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class ReceiveBackoffTest {
+    private long now = 0;
+    private final QueueMetrics metrics = new QueueMetrics();
+    private final ReceiveBackoff backoff = new ReceiveBackoff(metrics, () -> now);
+
+    @Test
+    public void shouldClassifyErrors() {
+        assertEquals(
+            ReceiveErrorType.THROTTLING,
+            ReceiveBackoff.classify(serviceException("ThrottlingException", 400))
+        );
+        assertEquals(ReceiveErrorType.THROTTLING, ReceiveBackoff.classify(serviceException("RequestThrottled", 403)));
+        assertEquals(
+            ReceiveErrorType.AUTHENTICATION,
+            ReceiveBackoff.classify(serviceException("InvalidClientTokenId", 403))
+        );
+        assertEquals(ReceiveErrorType.CLIENT, ReceiveBackoff.classify(serviceException("QueueDoesNotExist", 400)));
+        assertEquals(ReceiveErrorType.SERVICE, ReceiveBackoff.classify(serviceException("InternalError", 500)));
+        assertEquals(
+            ReceiveErrorType.NETWORK,
+            ReceiveBackoff.classify(new CompletionException(new SdkClientException("down", new IOException())))
+        );
+        assertEquals(ReceiveErrorType.OTHER, ReceiveBackoff.classify(new IllegalStateException()));
+    }
+
+    @Test
+    public void shouldBackOffExponentiallyWithJitterUntilSuccess() {
+        long first = backoff.onError(new IllegalStateException());
+        long second = backoff.onError(new IllegalStateException());
+        long third = backoff.onError(new IllegalStateException());
+
+        assertTrue(first >= 100 && first <= 200);
+        assertTrue(second >= 200 && second <= 400);
+        assertTrue(third >= 400 && third <= 800);
+        assertEquals(3, backoff.getConsecutiveErrors());
+        assertEquals(3, metrics.getReceiveErrors(ReceiveErrorType.OTHER));
+        assertEquals(0, backoff.getCooldownMillis());
+
+        backoff.onSuccess();
+
+        assertEquals(0, backoff.getConsecutiveErrors());
+    }
+
+    @Test
+    public void shouldShareCooldownOnThrottling() {
+        long delay = backoff.onError(serviceException("ThrottlingException", 400));
+
+        assertTrue(backoff.getCooldownMillis() > 0 && backoff.getCooldownMillis() <= delay + 1);
+        assertEquals(1, metrics.getReceiveErrors(ReceiveErrorType.THROTTLING));
+
+        now += TimeUnit.MILLISECONDS.toNanos(delay);
+
+        assertEquals(0, backoff.getCooldownMillis());
+    }
+
+    @Test
+    public void shouldBackOffMaximallyOnAuthenticationErrors() {
+        assertEquals(30_000, backoff.onError(serviceException("AccessDenied", 403)));
+    }
+
+    private static AmazonServiceException serviceException(String errorCode, int statusCode) {
+        AmazonServiceException exception = new AmazonServiceException(errorCode);
+        exception.setErrorCode(errorCode);
+        exception.setStatusCode(statusCode);
+        return exception;
+    }
+}
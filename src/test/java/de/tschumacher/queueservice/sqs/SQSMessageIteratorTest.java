@@ -0,0 +1,137 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.sqs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.*;
+
+import com.amazonaws.services.sqs.model.Message;
+import de.tschumacher.queueservice.message.SQSMessage;
+import de.tschumacher.queueservice.message.SQSMessageFactory;
+import de.tschumacher.queueservice.message.TestDO;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class SQSMessageIteratorTest {
+    @Mock
+    private SQSQueue queue;
+
+    @Mock
+    private SQSMessageFactory<TestDO> factory;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(factory.createSQSMessage(any(Message.class)))
+            .thenAnswer(
+                invocation ->
+                    SQSMessage
+                        .<TestDO>builder()
+                        .receiptHandle(invocation.<Message>getArgument(0).getReceiptHandle())
+                        .build()
+            );
+    }
+
+    @AfterEach
+    public void shutDown() {
+        verifyNoMoreInteractions(queue);
+    }
+
+    @Test
+    public void shouldDrainQueueAndBatchAcks() {
+        when(queue.receiveBatchAsync())
+            .thenReturn(received(0, 10), received(10, 2), received(0, 0));
+
+        SQSMessageIterator<TestDO> iterator = new SQSMessageIterator<>(queue, factory, 0);
+        List<String> receiptHandles = new ArrayList<>();
+        while (iterator.hasNext()) {
+            receiptHandles.add(iterator.next().getReceiptHandle());
+        }
+
+        assertEquals(12, receiptHandles.size());
+        assertFalse(iterator.hasNext());
+
+        verify(queue, times(3)).receiveBatchAsync();
+        verify(queue).deleteMessages(receiptHandles.subList(0, 10));
+        verify(queue).deleteMessages(receiptHandles.subList(10, 12));
+    }
+
+    @Test
+    public void shouldRetryNackedMessagesAndReleaseUnconsumedOnes() {
+        CompletableFuture<List<Message>> readAhead = new CompletableFuture<>();
+        when(queue.receiveBatchAsync()).thenReturn(received(0, 3), readAhead);
+
+        try (SQSMessageIterator<TestDO> iterator = new SQSMessageIterator<>(queue, factory, 0)) {
+            iterator.next().ack();
+            iterator.next().nack();
+        }
+        readAhead.complete(Collections.singletonList(new Message().withReceiptHandle("receiptHandle3")));
+
+        verify(queue, times(2)).receiveBatchAsync();
+        verify(queue).retryMessage("receiptHandle1");
+        verify(queue).deleteMessages(Collections.singletonList("receiptHandle0"));
+        verify(queue).releaseMessages(Collections.singletonList("receiptHandle2"));
+        verify(queue).releaseMessages(Collections.singletonList("receiptHandle3"));
+    }
+
+    @Test
+    public void shouldReleaseCurrentMessageWhenClosedBeforeSettling() {
+        when(queue.receiveBatchAsync()).thenReturn(received(0, 1), received(0, 0));
+
+        try (SQSMessageIterator<TestDO> iterator = new SQSMessageIterator<>(queue, factory, 0)) {
+            iterator.next();
+        }
+
+        verify(queue, times(2)).receiveBatchAsync();
+        verify(queue).releaseMessages(Collections.singletonList("receiptHandle0"));
+    }
+
+    @Test
+    public void shouldStreamMessages() {
+        when(queue.receiveBatchAsync()).thenReturn(received(0, 2), received(0, 0));
+        when(queue.stream(factory, 0, TimeUnit.SECONDS)).thenCallRealMethod();
+        when(queue.iterator(factory, 0, TimeUnit.SECONDS)).thenCallRealMethod();
+
+        List<String> receiptHandles = queue
+            .stream(factory, 0, TimeUnit.SECONDS)
+            .map(SQSMessage::getReceiptHandle)
+            .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("receiptHandle0", "receiptHandle1"), receiptHandles);
+
+        verify(queue).stream(factory, 0, TimeUnit.SECONDS);
+        verify(queue).iterator(factory, 0, TimeUnit.SECONDS);
+        verify(queue, times(2)).receiveBatchAsync();
+        verify(queue).deleteMessages(receiptHandles);
+    }
+
+    private static CompletableFuture<List<Message>> received(int from, int count) {
+        List<Message> messages = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            messages.add(new Message().withReceiptHandle("receiptHandle" + i));
+        }
+        return CompletableFuture.completedFuture(messages);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.sqs;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.AbstractAmazonSQSAsync;
+import com.amazonaws.services.sqs.model.*;
+import de.tschumacher.queueservice.message.SQSMessage;
+import de.tschumacher.queueservice.message.SQSMessageFactory;
+import de.tschumacher.queueservice.message.coder.SQSCoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the client side of receiving, decoding and sending messages against an in-memory SQS stub. Run the main
+ * method from the test classpath; the GC profiler reports the bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SQSQueueBenchmark {
+    private static final int BATCH_SIZE = 10;
+
+    private SQSQueue queue;
+    private SQSMessageFactory<String> factory;
+    private SQSMessage<String> message;
+
+    @Setup
+    public void setUp() {
+        List<Message> messages = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            messages.add(
+                new Message()
+                    .withMessageId("messageId" + i)
+                    .withReceiptHandle("receiptHandle" + i)
+                    .withBody("{\"content\":\"content" + i + "\"}")
+                    .addAttributesEntry("SentTimestamp", Long.toString(System.currentTimeMillis()))
+                    .addAttributesEntry("ApproximateFirstReceiveTimestamp", Long.toString(System.currentTimeMillis()))
+                    .addAttributesEntry("ApproximateReceiveCount", "1")
+            );
+        }
+
+        SQSQueueConfiguration configuration = SQSQueueConfiguration
+            .builder()
+            .queueName("benchmark")
+            .accessKey("accessKey")
+            .secretKey("secretKey")
+            .maxNumberOfMessages(BATCH_SIZE)
+            .build();
+        queue = new SQSQueue(configuration, new StubSQS(new ReceiveMessageResult().withMessages(messages)));
+        queue.getQueueUrl();
+
+        factory =
+            new SQSMessageFactory<>(
+                new SQSCoder<String>() {
+
+                    @Override
+                    public String encode(String content) {
+                        return content;
+                    }
+
+                    @Override
+                    public String decode(String content) {
+                        return content;
+                    }
+                }
+            );
+        message = SQSMessage.<String>builder().plainContent("{\"content\":\"content\"}").delay(0).build();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void receive(Blackhole blackhole) {
+        for (Message received : queue.receiveMessages()) {
+            blackhole.consume(factory.createSQSMessage(received));
+        }
+    }
+
+    @Benchmark
+    public void send() {
+        queue.sendMessage(message);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+            new OptionsBuilder().include(SQSQueueBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build()
+        )
+            .run();
+    }
+
+    private static class StubSQS extends AbstractAmazonSQSAsync {
+        private final ReceiveMessageResult receiveMessageResult;
+        private final SendMessageResult sendMessageResult = new SendMessageResult().withMessageId("messageId");
+
+        StubSQS(ReceiveMessageResult receiveMessageResult) {
+            this.receiveMessageResult = receiveMessageResult;
+        }
+
+        @Override
+        public GetQueueUrlResult getQueueUrl(String queueName) {
+            return new GetQueueUrlResult().withQueueUrl("https://sqs.local/" + queueName);
+        }
+
+        @Override
+        public ReceiveMessageResult receiveMessage(ReceiveMessageRequest request) {
+            return receiveMessageResult;
+        }
+
+        @Override
+        public Future<SendMessageResult> sendMessageAsync(
+            SendMessageRequest request,
+            AsyncHandler<SendMessageRequest, SendMessageResult> asyncHandler
+        ) {
+            asyncHandler.onSuccess(request, sendMessageResult);
+            return null;
+        }
+    }
+}
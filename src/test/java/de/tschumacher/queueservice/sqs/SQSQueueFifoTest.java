@@ -14,6 +14,7 @@
 package de.tschumacher.queueservice.sqs;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
 import com.amazonaws.auth.policy.actions.SQSActions;
@@ -59,11 +60,12 @@ public class SQSQueueFifoTest {
         when(this.sqs.getQueueUrl("queueName1.fifo")).thenReturn(new GetQueueUrlResult().withQueueUrl(queueUrl));
 
         this.sqsQueue = new SQSQueue(configuration, this.sqs);
+        this.sqsQueue.getQueueUrl();
     }
 
     @AfterEach
     public void shutDown() {
-        verify(this.sqs).getQueueUrl("queueName1.fifo");
+        verify(this.sqs, timeout(1000)).getQueueUrl("queueName1.fifo");
         verifyNoMoreInteractions(this.sqs);
     }
 
@@ -89,6 +91,8 @@ public class SQSQueueFifoTest {
 
         this.sqsQueue = new SQSQueue(configuration, this.sqs);
 
+        assertEquals("queueUrl2", this.sqsQueue.getQueueUrl());
+
         verify(this.sqs).getQueueUrl("queueName.fifo");
         verify(this.sqs)
             .createQueue(
@@ -105,6 +109,7 @@ public class SQSQueueFifoTest {
             .<TestDO>builder()
             .plainContent("content1")
             .messageGroupId("messageGroupId1")
+            .messageDeduplicationId("deduplicationId1")
             .delay(5)
             .build();
 
@@ -114,11 +119,72 @@ public class SQSQueueFifoTest {
             .withQueueUrl(queueUrl)
             .withMessageBody("content1")
             .withDelaySeconds(5)
-            .withMessageGroupId("messageGroupId1");
+            .withMessageGroupId("messageGroupId1")
+            .withMessageDeduplicationId("deduplicationId1");
 
         verify(this.sqs).sendMessageAsync(eq(expectedSendRequest), any());
     }
 
+    @Test
+    public void shouldRejectLongDelays() {
+        final SQSMessage<TestDO> message = SQSMessage
+            .<TestDO>builder()
+            .plainContent("content1")
+            .messageGroupId("messageGroupId1")
+            .delay(3600)
+            .build();
+
+        assertThrows(IllegalArgumentException.class, () -> this.sqsQueue.sendMessage(message));
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> this.sqsQueue.sendMessages(Collections.singletonList(message))
+        );
+    }
+
+    @Test
+    public void shouldSendMessagesInBatchesWithDeduplicationIds() {
+        List<SQSMessage<TestDO>> messages = Arrays.asList(
+            SQSMessage
+                .<TestDO>builder()
+                .plainContent("same")
+                .messageGroupId("group1")
+                .messageDeduplicationId("a")
+                .build(),
+            SQSMessage
+                .<TestDO>builder()
+                .plainContent("same")
+                .messageGroupId("group1")
+                .messageDeduplicationId("b")
+                .build()
+        );
+        when(this.sqs.sendMessageBatch(any(SendMessageBatchRequest.class)))
+            .thenReturn(
+                new SendMessageBatchResult()
+                    .withFailed(new BatchResultErrorEntry().withId("1").withCode("InternalError"))
+            );
+
+        List<SQSMessage<TestDO>> failed = this.sqsQueue.sendMessages(messages);
+
+        verify(this.sqs)
+            .sendMessageBatch(
+                new SendMessageBatchRequest()
+                    .withQueueUrl(queueUrl)
+                    .withEntries(
+                        new SendMessageBatchRequestEntry()
+                            .withId("0")
+                            .withMessageBody("same")
+                            .withMessageGroupId("group1")
+                            .withMessageDeduplicationId("a"),
+                        new SendMessageBatchRequestEntry()
+                            .withId("1")
+                            .withMessageBody("same")
+                            .withMessageGroupId("group1")
+                            .withMessageDeduplicationId("b")
+                    )
+            );
+        assertEquals(Collections.singletonList(messages.get(1)), failed);
+    }
+
     @Test
     public void shouldDeleteMessage() {
         final String receiptHandle = "receiptHandle1";
@@ -169,7 +235,14 @@ public class SQSQueueFifoTest {
         ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(queueUrl)
             .withWaitTimeSeconds(configuration.getWaitTimeSeconds())
             .withMaxNumberOfMessages(configuration.getMaxNumberOfMessages())
-            .withVisibilityTimeout(configuration.getVisibilityTimeout());
+            .withVisibilityTimeout(configuration.getVisibilityTimeout())
+            .withAttributeNames(
+                "SentTimestamp",
+                "ApproximateFirstReceiveTimestamp",
+                "ApproximateReceiveCount",
+                "MessageGroupId"
+            )
+            .withMessageAttributeNames("All");
 
         when(this.sqs.receiveMessage(receiveMessageRequest))
             .thenReturn(new ReceiveMessageResult().withMessages(messages));
@@ -186,7 +259,14 @@ public class SQSQueueFifoTest {
         ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(queueUrl)
             .withWaitTimeSeconds(configuration.getWaitTimeSeconds())
             .withMaxNumberOfMessages(configuration.getMaxNumberOfMessages())
-            .withVisibilityTimeout(configuration.getVisibilityTimeout());
+            .withVisibilityTimeout(configuration.getVisibilityTimeout())
+            .withAttributeNames(
+                "SentTimestamp",
+                "ApproximateFirstReceiveTimestamp",
+                "ApproximateReceiveCount",
+                "MessageGroupId"
+            )
+            .withMessageAttributeNames("All");
 
         when(this.sqs.receiveMessage(receiveMessageRequest)).thenReturn(new ReceiveMessageResult());
 
@@ -208,6 +288,7 @@ public class SQSQueueFifoTest {
             .thenReturn(new GetQueueAttributesResult().addAttributesEntry("QueueArn", "queueArn1"));
 
         this.sqsQueue.enableSNS(topicArn);
+        this.sqsQueue.enableSNS(topicArn);
 
         verify(this.sqs)
             .setQueueAttributes(
@@ -14,6 +14,8 @@
 package de.tschumacher.queueservice.sqs;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 import com.amazonaws.auth.policy.actions.SQSActions;
@@ -23,13 +25,18 @@ import com.amazonaws.auth.policy.Policy;
 import com.amazonaws.auth.policy.Principal;
 import com.amazonaws.auth.policy.Resource;
 import com.amazonaws.auth.policy.Statement;
+import com.amazonaws.handlers.AsyncHandler;
 import com.amazonaws.services.sqs.AmazonSQSAsync;
 import com.amazonaws.services.sqs.model.*;
+import de.tschumacher.queueservice.message.MessageAttribute;
 import de.tschumacher.queueservice.message.SQSMessage;
 import de.tschumacher.queueservice.message.TestDO;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -58,11 +65,12 @@ public class SQSQueueStandardTest {
         when(this.sqs.getQueueUrl("queueName1")).thenReturn(new GetQueueUrlResult().withQueueUrl(queueUrl));
 
         this.sqsQueue = new SQSQueue(configuration, this.sqs);
+        this.sqsQueue.getQueueUrl();
     }
 
     @AfterEach
     public void shutDown() {
-        verify(this.sqs).getQueueUrl("queueName1");
+        verify(this.sqs, timeout(1000)).getQueueUrl("queueName1");
         verifyNoMoreInteractions(this.sqs);
     }
 
@@ -81,20 +89,38 @@ public class SQSQueueStandardTest {
 
         this.sqsQueue = new SQSQueue(configuration, this.sqs);
 
+        assertEquals("queueUrl2", this.sqsQueue.getQueueUrl());
+
         verify(this.sqs).getQueueUrl("queueName2");
         verify(this.sqs).createQueue(new CreateQueueRequest().withQueueName("queueName2"));
     }
 
     @Test
     public void shouldSendMessage() {
-        final SQSMessage<TestDO> message = SQSMessage.<TestDO>builder().plainContent("content1").delay(5).build();
+        Map<String, MessageAttribute> attributes = new LinkedHashMap<>();
+        attributes.put("type", MessageAttribute.string("order"));
+        attributes.put("version", MessageAttribute.number(2));
+        final SQSMessage<TestDO> message = SQSMessage
+            .<TestDO>builder()
+            .plainContent("content1")
+            .delay(5)
+            .messageAttributes(attributes)
+            .build();
 
         this.sqsQueue.sendMessage(message);
 
         SendMessageRequest expectedSendRequest = new SendMessageRequest()
             .withQueueUrl(queueUrl)
             .withMessageBody("content1")
-            .withDelaySeconds(5);
+            .withDelaySeconds(5)
+            .addMessageAttributesEntry(
+                "type",
+                new MessageAttributeValue().withDataType("String").withStringValue("order")
+            )
+            .addMessageAttributesEntry(
+                "version",
+                new MessageAttributeValue().withDataType("Number").withStringValue("2")
+            );
 
         verify(this.sqs).sendMessageAsync(eq(expectedSendRequest), any());
     }
@@ -109,6 +135,24 @@ public class SQSQueueStandardTest {
             .deleteMessage(new DeleteMessageRequest().withQueueUrl("queueUrl1").withReceiptHandle(receiptHandle));
     }
 
+    @Test
+    public void shouldDeleteMessagesInBatches() {
+        List<String> receiptHandles = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            receiptHandles.add("receiptHandle" + i);
+        }
+        when(this.sqs.deleteMessageBatch(any(DeleteMessageBatchRequest.class)))
+            .thenReturn(new DeleteMessageBatchResult());
+
+        this.sqsQueue.deleteMessages(receiptHandles);
+
+        ArgumentCaptor<DeleteMessageBatchRequest> captor = ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+        verify(this.sqs, times(2)).deleteMessageBatch(captor.capture());
+        assertEquals(10, captor.getAllValues().get(0).getEntries().size());
+        assertEquals(2, captor.getAllValues().get(1).getEntries().size());
+        assertEquals("receiptHandle11", captor.getAllValues().get(1).getEntries().get(1).getReceiptHandle());
+    }
+
     @Test
     public void shouldRetryMessage() {
         final String receiptHandle = "receiptHandle1";
@@ -124,6 +168,28 @@ public class SQSQueueStandardTest {
             );
     }
 
+    @Test
+    public void shouldReleaseMessages() {
+        ChangeMessageVisibilityBatchRequest expectedRequest = new ChangeMessageVisibilityBatchRequest()
+            .withQueueUrl(queueUrl)
+            .withEntries(
+                new ChangeMessageVisibilityBatchRequestEntry()
+                    .withId("0")
+                    .withReceiptHandle("receiptHandle1")
+                    .withVisibilityTimeout(0),
+                new ChangeMessageVisibilityBatchRequestEntry()
+                    .withId("1")
+                    .withReceiptHandle("receiptHandle2")
+                    .withVisibilityTimeout(0)
+            );
+        when(this.sqs.changeMessageVisibilityBatch(expectedRequest))
+            .thenReturn(new ChangeMessageVisibilityBatchResult());
+
+        this.sqsQueue.releaseMessages(Arrays.asList("receiptHandle1", "receiptHandle2"));
+
+        verify(this.sqs).changeMessageVisibilityBatch(expectedRequest);
+    }
+
     @Test
     public void shouldReturnQueueArn() {
         GetQueueAttributesRequest getQueueAttributesRequest = new GetQueueAttributesRequest()
@@ -139,17 +205,59 @@ public class SQSQueueStandardTest {
         verify(this.sqs).getQueueAttributes(getQueueAttributesRequest);
     }
 
+    @Test
+    public void shouldSampleQueueDepth() {
+        GetQueueAttributesRequest getQueueAttributesRequest = new GetQueueAttributesRequest()
+            .withQueueUrl(queueUrl)
+            .withAttributeNames(
+                "ApproximateNumberOfMessages",
+                "ApproximateNumberOfMessagesNotVisible",
+                "ApproximateNumberOfMessagesDelayed"
+            );
+        when(this.sqs.getQueueAttributes(getQueueAttributesRequest))
+            .thenReturn(
+                new GetQueueAttributesResult()
+                    .addAttributesEntry("ApproximateNumberOfMessages", "12")
+                    .addAttributesEntry("ApproximateNumberOfMessagesNotVisible", "3")
+                    .addAttributesEntry("ApproximateNumberOfMessagesDelayed", "4")
+            );
+        QueueDepthListener listener = mock(QueueDepthListener.class);
+        this.sqsQueue.addQueueDepthListener(listener);
+
+        final QueueDepth depth = this.sqsQueue.sampleQueueDepth();
+
+        assertEquals(12, depth.getVisible());
+        assertEquals(3, depth.getNotVisible());
+        assertEquals(4, depth.getDelayed());
+        assertEquals(16, depth.getBacklog());
+        assertEquals(16, this.sqsQueue.getMetrics().getBacklog());
+
+        verify(this.sqs).getQueueAttributes(getQueueAttributesRequest);
+        verify(listener).queueDepthSampled(this.sqsQueue, depth);
+    }
+
     @Test
     public void shouldReceiveMessages() {
+        long sentTimestamp = System.currentTimeMillis() - 5000;
         List<Message> messages = Arrays.asList(
-            new Message().withMessageId("messageId1"),
+            new Message()
+                .withMessageId("messageId1")
+                .addAttributesEntry("SentTimestamp", Long.toString(sentTimestamp))
+                .addAttributesEntry("ApproximateFirstReceiveTimestamp", Long.toString(sentTimestamp + 1000)),
             new Message().withMessageId("messageId2")
         );
 
         ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(queueUrl)
             .withWaitTimeSeconds(configuration.getWaitTimeSeconds())
             .withMaxNumberOfMessages(configuration.getMaxNumberOfMessages())
-            .withVisibilityTimeout(configuration.getVisibilityTimeout());
+            .withVisibilityTimeout(configuration.getVisibilityTimeout())
+            .withAttributeNames(
+                "SentTimestamp",
+                "ApproximateFirstReceiveTimestamp",
+                "ApproximateReceiveCount",
+                "MessageGroupId"
+            )
+            .withMessageAttributeNames("All");
 
         when(this.sqs.receiveMessage(receiveMessageRequest))
             .thenReturn(new ReceiveMessageResult().withMessages(messages));
@@ -157,16 +265,190 @@ public class SQSQueueStandardTest {
         final List<Message> receivedMessages = this.sqsQueue.receiveMessages();
 
         assertEquals(messages, receivedMessages);
+        assertEquals(1, this.sqsQueue.getMetrics().getLag().snapshot().getCount());
+        assertTrue(this.sqsQueue.getMetrics().getLag().snapshot().getP50() >= 5000);
+        assertEquals(1000, this.sqsQueue.getMetrics().getDwell().snapshot().getP50(), 1000 * 0.04);
 
         verify(this.sqs).receiveMessage(receiveMessageRequest);
     }
 
+    @Test
+    public void shouldResolveQueueUrlAgainWhenQueueIsGone() {
+        SQSQueueConfiguration configuration = SQSQueueConfiguration
+            .builder()
+            .queueName("queueName3")
+            .secretKey("secretKey1")
+            .accessKey("accessKey1")
+            .build();
+
+        when(this.sqs.getQueueUrl("queueName3")).thenReturn(new GetQueueUrlResult().withQueueUrl("queueUrl3"));
+        when(this.sqs.receiveMessage(any(ReceiveMessageRequest.class)))
+            .thenThrow(new QueueDoesNotExistException("queueName3"))
+            .thenReturn(new ReceiveMessageResult());
+
+        this.sqsQueue = new SQSQueue(configuration, this.sqs);
+
+        assertThrows(QueueDoesNotExistException.class, () -> this.sqsQueue.receiveMessages());
+        when(this.sqs.getQueueUrl("queueName3")).thenReturn(new GetQueueUrlResult().withQueueUrl("queueUrl4"));
+
+        assertEquals(Collections.emptyList(), this.sqsQueue.receiveMessages());
+        assertEquals("queueUrl4", this.sqsQueue.getQueueUrl());
+
+        ArgumentCaptor<ReceiveMessageRequest> requests = ArgumentCaptor.forClass(ReceiveMessageRequest.class);
+        verify(this.sqs, times(2)).receiveMessage(requests.capture());
+        assertEquals("queueUrl3", requests.getAllValues().get(0).getQueueUrl());
+        assertEquals("queueUrl4", requests.getAllValues().get(1).getQueueUrl());
+        verify(this.sqs, times(2)).getQueueUrl("queueName3");
+    }
+
+    @Test
+    public void shouldSendLongDelaysWithDeliverAt() {
+        long before = System.currentTimeMillis();
+        final SQSMessage<TestDO> message = SQSMessage.<TestDO>builder().plainContent("content1").delay(3600).build();
+
+        this.sqsQueue.sendMessage(message);
+
+        ArgumentCaptor<SendMessageRequest> captor = ArgumentCaptor.forClass(SendMessageRequest.class);
+        verify(this.sqs).sendMessageAsync(captor.capture(), any());
+        assertEquals(900, captor.getValue().getDelaySeconds());
+        MessageAttributeValue deliverAt = captor.getValue().getMessageAttributes().get(SQSQueue.DELIVER_AT);
+        long deliverAtMillis = Long.parseLong(deliverAt.getStringValue());
+        assertTrue(deliverAtMillis >= before + 3_600_000);
+        assertTrue(deliverAtMillis <= System.currentTimeMillis() + 3_600_000);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldDeferMessagesThatAreNotDue() {
+        long deliverAt = System.currentTimeMillis() + 1_800_000;
+        MessageAttributeValue deliverAtValue = new MessageAttributeValue()
+            .withDataType("Number")
+            .withStringValue(Long.toString(deliverAt));
+        List<Message> messages = Arrays.asList(
+            new Message()
+                .withMessageId("messageId1")
+                .withReceiptHandle("receiptHandle1")
+                .withBody("body1")
+                .addMessageAttributesEntry(SQSQueue.DELIVER_AT, deliverAtValue),
+            new Message().withMessageId("messageId2").withReceiptHandle("receiptHandle2")
+        );
+        when(this.sqs.receiveMessage(any(ReceiveMessageRequest.class)))
+            .thenReturn(new ReceiveMessageResult().withMessages(messages));
+        doAnswer(invocation -> {
+                invocation
+                    .<AsyncHandler<SendMessageRequest, SendMessageResult>>getArgument(1)
+                    .onSuccess(invocation.getArgument(0), new SendMessageResult());
+                return null;
+            })
+            .when(this.sqs)
+            .sendMessageAsync(any(SendMessageRequest.class), any());
+
+        final List<Message> receivedMessages = this.sqsQueue.receiveMessages();
+
+        assertEquals(Collections.singletonList(messages.get(1)), receivedMessages);
+        verify(this.sqs).receiveMessage(any(ReceiveMessageRequest.class));
+        verify(this.sqs)
+            .sendMessageAsync(
+                eq(
+                    new SendMessageRequest()
+                        .withQueueUrl(queueUrl)
+                        .withMessageBody("body1")
+                        .withDelaySeconds(900)
+                        .addMessageAttributesEntry(SQSQueue.DELIVER_AT, deliverAtValue)
+                ),
+                any()
+            );
+        verify(this.sqs)
+            .deleteMessage(new DeleteMessageRequest().withQueueUrl(queueUrl).withReceiptHandle("receiptHandle1"));
+    }
+
+    @Test
+    public void shouldRefuseLongDelaysWithoutFreeAttribute() {
+        Map<String, MessageAttribute> attributes = new LinkedHashMap<>();
+        for (int i = 0; i < 10; i++) {
+            attributes.put("attribute" + i, MessageAttribute.string("value" + i));
+        }
+        final SQSMessage<TestDO> message = SQSMessage
+            .<TestDO>builder()
+            .plainContent("content1")
+            .delay(3600)
+            .messageAttributes(attributes)
+            .build();
+
+        assertThrows(IllegalArgumentException.class, () -> this.sqsQueue.sendMessage(message));
+    }
+
+    @Test
+    public void shouldDeliverMessagesWithUnreadableDeliverAt() {
+        List<Message> messages = Collections.singletonList(
+            new Message()
+                .withMessageId("messageId1")
+                .withReceiptHandle("receiptHandle1")
+                .addMessageAttributesEntry(
+                    SQSQueue.DELIVER_AT,
+                    new MessageAttributeValue().withDataType("Number").withStringValue("tomorrow")
+                )
+                .addMessageAttributesEntry(
+                    "DeliverAt",
+                    new MessageAttributeValue().withDataType("String").withStringValue("next week")
+                )
+        );
+        when(this.sqs.receiveMessage(any(ReceiveMessageRequest.class)))
+            .thenReturn(new ReceiveMessageResult().withMessages(messages));
+
+        assertEquals(messages, this.sqsQueue.receiveMessages());
+        verify(this.sqs).receiveMessage(any(ReceiveMessageRequest.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldReceiveMessagesAsync() {
+        List<Message> messages = Arrays.asList(
+            new Message().withMessageId("messageId1"),
+            new Message().withMessageId("messageId2")
+        );
+
+        ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(queueUrl)
+            .withWaitTimeSeconds(configuration.getWaitTimeSeconds())
+            .withMaxNumberOfMessages(configuration.getMaxNumberOfMessages())
+            .withVisibilityTimeout(configuration.getVisibilityTimeout())
+            .withAttributeNames(
+                "SentTimestamp",
+                "ApproximateFirstReceiveTimestamp",
+                "ApproximateReceiveCount",
+                "MessageGroupId"
+            )
+            .withMessageAttributeNames("All");
+
+        when(this.sqs.receiveMessageAsync(eq(receiveMessageRequest), any()))
+            .thenAnswer(
+                invocation -> {
+                    AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult> handler = invocation.getArgument(1);
+                    handler.onSuccess(receiveMessageRequest, new ReceiveMessageResult().withMessages(messages));
+                    return null;
+                }
+            );
+
+        final List<Message> receivedMessages = this.sqsQueue.receiveMessagesAsync().join();
+
+        assertEquals(messages, receivedMessages);
+
+        verify(this.sqs).receiveMessageAsync(eq(receiveMessageRequest), any());
+    }
+
     @Test
     public void shouldReceiveEmptyMessages() {
         ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(queueUrl)
             .withWaitTimeSeconds(configuration.getWaitTimeSeconds())
             .withMaxNumberOfMessages(configuration.getMaxNumberOfMessages())
-            .withVisibilityTimeout(configuration.getVisibilityTimeout());
+            .withVisibilityTimeout(configuration.getVisibilityTimeout())
+            .withAttributeNames(
+                "SentTimestamp",
+                "ApproximateFirstReceiveTimestamp",
+                "ApproximateReceiveCount",
+                "MessageGroupId"
+            )
+            .withMessageAttributeNames("All");
 
         when(this.sqs.receiveMessage(receiveMessageRequest)).thenReturn(new ReceiveMessageResult());
 
@@ -188,6 +470,7 @@ public class SQSQueueStandardTest {
             .thenReturn(new GetQueueAttributesResult().addAttributesEntry("QueueArn", "queueArn1"));
 
         this.sqsQueue.enableSNS(topicArn);
+        this.sqsQueue.enableSNS(topicArn);
 
         verify(this.sqs)
             .setQueueAttributes(
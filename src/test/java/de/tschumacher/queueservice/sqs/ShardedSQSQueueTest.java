@@ -0,0 +1,88 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.sqs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+import de.tschumacher.queueservice.message.SQSMessage;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class ShardedSQSQueueTest {
+
+    @Test
+    public void shouldNameShards() {
+        assertEquals("orders-3.fifo", ShardedSQSQueue.shardName("orders.fifo", 3));
+        assertEquals("orders-0", ShardedSQSQueue.shardName("orders", 0));
+    }
+
+    @Test
+    public void shouldRouteKeysStablyAndEvenly() {
+        int[] counts = new int[8];
+        for (int i = 0; i < 80_000; i++) {
+            String key = "order-" + i;
+            int shard = ShardedSQSQueue.shardIndex(key, 8);
+            assertEquals(shard, ShardedSQSQueue.shardIndex(key, 8));
+            counts[shard]++;
+        }
+
+        for (int count : counts) {
+            assertTrue(count > 9_000 && count < 11_000, "unbalanced shard with " + count + " keys");
+        }
+    }
+
+    @Test
+    public void shouldSendToShardOfMessageGroup() {
+        List<SQSQueue> shards = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            shards.add(mock(SQSQueue.class));
+        }
+        ShardedSQSQueue shardedQueue = new ShardedSQSQueue(shards);
+        SQSMessage<String> message = SQSMessage.<String>builder().messageGroupId("order-1").build();
+
+        shardedQueue.sendMessage(message);
+        shardedQueue.sendMessage(message);
+
+        SQSQueue shard = shards.get(ShardedSQSQueue.shardIndex("order-1", 4));
+        assertSame(shard, shardedQueue.shardFor("order-1"));
+        verify(shard, times(2)).sendMessage(message);
+        for (SQSQueue other : shards) {
+            if (other != shard) {
+                verifyNoInteractions(other);
+            }
+        }
+    }
+
+    @Test
+    public void shouldRequireMessageGroupForFifoShards() {
+        List<SQSQueue> shards = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            SQSQueue shard = mock(SQSQueue.class);
+            when(shard.isFifo()).thenReturn(true);
+            shards.add(shard);
+        }
+        ShardedSQSQueue shardedQueue = new ShardedSQSQueue(shards);
+        SQSMessage<String> message = SQSMessage.<String>builder().build();
+
+        assertThrows(IllegalArgumentException.class, () -> shardedQueue.sendMessage(message));
+        for (SQSQueue shard : shards) {
+            verify(shard, never()).sendMessage(message);
+        }
+    }
+}
@@ -14,6 +14,7 @@
 package de.tschumacher.queueservice.sqs.distributor;
 
 import de.tschumacher.queueservice.message.coder.GsonSQSCoder;
+import de.tschumacher.queueservice.message.DeduplicationIdGenerator;
 import de.tschumacher.queueservice.message.SQSMessage;
 import de.tschumacher.queueservice.message.SQSMessageFactory;
 import de.tschumacher.queueservice.message.TestDO;
@@ -110,4 +111,27 @@ public class SQSMessageDistributorTest {
 
         Mockito.verify(this.queue).sendMessage(sqsMessage);
     }
+
+    @Test
+    public void shouldDistributeMessageWithDeduplicationId() {
+        this.sqsMessageDistributor =
+            new SQSMessageDistributor<>(
+                this.queue,
+                new SQSMessageFactory<>(new GsonSQSCoder<>(TestDO.class)),
+                DeduplicationIdGenerator.supplied(TestDO::getContent)
+            );
+        final TestDO message = new TestDO("testDO1");
+
+        this.sqsMessageDistributor.distribute(message, "messageGroupId1");
+
+        SQSMessage<TestDO> sqsMessage = SQSMessage
+            .<TestDO>builder()
+            .content(message)
+            .plainContent("{\"content\":\"testDO1\"}")
+            .messageGroupId("messageGroupId1")
+            .messageDeduplicationId("testDO1")
+            .build();
+
+        Mockito.verify(this.queue).sendMessage(sqsMessage);
+    }
 }
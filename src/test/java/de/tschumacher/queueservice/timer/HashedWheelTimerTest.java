@@ -0,0 +1,153 @@
+/*
+ * Copyright 2021 Tobias Schumacher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package de.tschumacher.queueservice.timer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class HashedWheelTimerTest {
+    private HashedWheelTimer timer;
+
+    @BeforeEach
+    public void setUp() {
+        this.timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 8, 4, Runnable::run);
+    }
+
+    @AfterEach
+    public void shutDown() {
+        this.timer.stop();
+    }
+
+    @Test
+    public void shouldRunTasksInDeadlineOrderAcrossRounds() throws InterruptedException {
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        long start = System.nanoTime();
+
+        Timeout last = this.timer.newTimeout(
+            () -> {
+                order.add(3);
+                done.countDown();
+            },
+            60,
+            TimeUnit.MILLISECONDS
+        );
+        this.timer.newTimeout(
+            () -> {
+                order.add(2);
+                done.countDown();
+            },
+            25,
+            TimeUnit.MILLISECONDS
+        );
+        this.timer.newTimeout(
+            () -> {
+                order.add(1);
+                done.countDown();
+            },
+            0,
+            TimeUnit.MILLISECONDS
+        );
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(60));
+        assertEquals(3, order.size());
+        assertEquals(1, order.get(0));
+        assertEquals(2, order.get(1));
+        assertEquals(3, order.get(2));
+        assertTrue(last.isExpired());
+        assertFalse(last.cancel());
+        assertEquals(0, this.timer.getPendingTimeouts());
+    }
+
+    @Test
+    public void shouldNotRunCancelledTasks() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+
+        Timeout cancelled = this.timer.newTimeout(runs::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+        this.timer.newTimeout(done::countDown, 40, TimeUnit.MILLISECONDS);
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(cancelled.isCancelled());
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void shouldRejectTimeoutsBeyondLimit() {
+        for (int i = 0; i < 4; i++) {
+            this.timer.newTimeout(() -> {}, 1, TimeUnit.HOURS);
+        }
+
+        assertThrows(
+            RejectedExecutionException.class,
+            () -> this.timer.newTimeout(() -> {}, 1, TimeUnit.HOURS)
+        );
+        assertEquals(4, this.timer.getPendingTimeouts());
+    }
+
+    @Test
+    public void shouldRepeatUntilCancelled() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch repeated = new CountDownLatch(3);
+
+        Timeout periodic = this.timer.scheduleWithFixedDelay(
+            () -> {
+                runs.incrementAndGet();
+                repeated.countDown();
+            },
+            0,
+            2,
+            TimeUnit.MILLISECONDS
+        );
+
+        assertTrue(repeated.await(5, TimeUnit.SECONDS));
+        assertTrue(periodic.cancel());
+        int cancelledAt = runs.get();
+        Thread.sleep(20);
+        assertTrue(runs.get() <= cancelledAt + 1);
+    }
+
+    @Test
+    public void shouldKeepRepeatingWhenTaskFails() throws InterruptedException {
+        CountDownLatch repeated = new CountDownLatch(3);
+
+        Timeout periodic = this.timer.scheduleWithFixedDelay(
+            () -> {
+                repeated.countDown();
+                throw new IllegalStateException("failed");
+            },
+            0,
+            2,
+            TimeUnit.MILLISECONDS
+        );
+
+        assertTrue(repeated.await(5, TimeUnit.SECONDS));
+        assertTrue(periodic.cancel());
+    }
+}